@@ -0,0 +1,56 @@
+package com.example.trackingservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.trackingservice.DeliveryPartner.FEDEX;
+import static com.example.trackingservice.DeliveryStatus.DISPATCHED;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackingServiceBenchmark {
+
+    private TrackingController trackingController;
+    private ObjectMapper objectMapper;
+    private TrackingOut trackingOut;
+
+
+    @Setup
+    public void setUp() {
+        final var application = new TrackingServiceApplication();
+        final var syntheticTracking = application.syntheticTracking();
+        trackingController = new TrackingController(syntheticTracking,
+                application.syntheticBatchTracking(syntheticTracking), null);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        trackingOut = new TrackingOut(42, FEDEX, DISPATCHED);
+    }
+
+
+    @Benchmark
+    public TrackingOut track() {
+        return trackingController.track(42).block();
+    }
+
+
+    @Benchmark
+    public byte[] serializeTrackingOut() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(trackingOut);
+    }
+}
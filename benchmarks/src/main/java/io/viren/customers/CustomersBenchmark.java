@@ -0,0 +1,97 @@
+package io.viren.customers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.HashRing;
+import io.viren.commons.ResilienceFilters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * Serialization of {@link CustomerResponseDto} and the request side of {@link OrderService#getCustomerOrders}, the
+ * exchange being answered in memory with an empty order list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomersBenchmark {
+
+    @Param({"1", "10", "200"})
+    int ordersPerCustomer;
+
+    private OrderService orderService;
+    private ObjectMapper objectMapper;
+    private CustomerResponseDto customerResponseDto;
+    private HashRing hashRing;
+
+
+    @Setup
+    public void setUp() {
+        final var meterRegistry = new SimpleMeterRegistry();
+        orderService = new OrderService(WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(OK)
+                        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                        .body("[]")
+                        .build())), new OrderShards(new StandardEnvironment(), "http://localhost:9001", meterRegistry) {
+                    @Override
+                    boolean reachable(String shard) {
+                        return true;
+                    }
+                },
+                new DownstreamClients(new StandardEnvironment()),
+                new ResilienceFilters(new StandardEnvironment(), meterRegistry), meterRegistry);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        customerResponseDto = new CustomerResponseDto(new Customer(1, "Hari"),
+                IntStream.rangeClosed(1, ordersPerCustomer)
+                        .mapToObj(id -> new CustomerOrderView(id, 1, "product " + id,
+                                new Tracking(id, 7, "FEDEX", "DISPATCHED", LocalDate.now())))
+                        .toList());
+        hashRing = new HashRing(16, 128);
+    }
+
+
+    @Benchmark
+    public byte[] getCustomerOrders() {
+        return orderService.getCustomerOrders(4, null).block().orders();
+    }
+
+
+    @Benchmark
+    public int routeToOrdersShard() {
+        return hashRing.shardOf(ThreadLocalRandom.current().nextInt(1_000_000));
+    }
+
+
+    @Benchmark
+    public byte[] serializeCustomerResponseDto() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(customerResponseDto);
+    }
+}
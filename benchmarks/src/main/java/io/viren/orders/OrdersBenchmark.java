@@ -0,0 +1,94 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.QueryMetrics;
+import io.viren.commons.ResilienceFilters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * {@link OrderController#getOrder} against an in-memory repository and a {@link TrackingService} answering
+ * without any I/O, so only the enrichment pipeline itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrdersBenchmark {
+
+    @Param({"1", "10", "200"})
+    int ordersPerCustomer;
+
+    private OrderController orderController;
+    private ObjectMapper objectMapper;
+    private List<OrderOut> orderOuts;
+
+
+    @Setup
+    public void setUp() {
+        final var orders = IntStream.rangeClosed(1, ordersPerCustomer)
+                .mapToObj(id -> new OrderLine(id, "product " + id))
+                .toList();
+        final var orderRepository = (OrderRepository) Proxy.newProxyInstance(OrderRepository.class.getClassLoader(),
+                new Class<?>[]{OrderRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findLinesByCustomerId")) {
+                        return Flux.fromIterable(orders);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        final var meterRegistry = new SimpleMeterRegistry();
+        final var trackingService = new TrackingService(WebClient.builder(), "http://localhost:9002", 5, 100, "json",
+                new TrackingCache(meterRegistry, 10_000, Duration.ofHours(1), Duration.ofSeconds(30),
+                        Duration.ofMinutes(10)),
+                new DownstreamClients(new StandardEnvironment()),
+                new ResilienceFilters(new StandardEnvironment(), meterRegistry), meterRegistry) {
+            @Override
+            Mono<Tracking> track(Integer orderId) {
+                return Mono.just(new Tracking(orderId, 7, "FEDEX", "DISPATCHED", LocalDate.now()));
+            }
+        };
+        orderController = new OrderController(orderRepository, trackingService,
+                new TrackingEnrichment(meterRegistry, 100, 64, 16, 32, false), new QueryMetrics(meterRegistry),
+                new CustomerOrdersCache(meterRegistry, 1 << 20), Jackson2ObjectMapperBuilder.json().build());
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        orderOuts = orderController.getOrder(RequestPriority.NORMAL).apply(1).collectList().block();
+    }
+
+
+    @Benchmark
+    public List<OrderOut> getOrder() {
+        return orderController.getOrder(RequestPriority.NORMAL).apply(1).collectList().block();
+    }
+
+
+    @Benchmark
+    public byte[] serializeOrderOuts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orderOuts);
+    }
+}
@@ -0,0 +1,56 @@
+package io.viren.commons;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+
+/**
+ * {@link ConcurrencyLimitFilter} for the {@code blocking} build, on the same {@link ConcurrencyLimits}. A request
+ * holds its slot until its thread leaves the filter, async ones (the change feed) are best left excluded.
+ */
+class BlockingConcurrencyLimitFilter extends OncePerRequestFilter implements Ordered {
+
+    private final ConcurrencyLimits limits;
+
+
+    BlockingConcurrencyLimitFilter(ConcurrencyLimits limits) {
+        this.limits = limits;
+    }
+
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        final var limit = limits.limitOf(request.getMethod(),
+                PathContainer.parsePath(UrlPathHelper.defaultInstance.getPathWithinApplication(request)));
+        if (limit.isEmpty()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!limit.get().tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, limits.retryAfter());
+            response.sendError(503);
+            return;
+        }
+        final var start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limit.get().release(System.nanoTime() - start);
+        }
+    }
+
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+}
@@ -0,0 +1,72 @@
+package io.viren.commons;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DownstreamClients} for {@link RestTemplate}: a pool of blocking connections per downstream app, tuned from
+ * the same {@code http.client.<target>.*} settings. The {@code h2c} and {@code compress} ones do not apply.
+ */
+public class BlockingDownstreamClients implements DisposableBean {
+
+    private final Binder binder;
+    private final RestTemplateBuilder restTemplateBuilder;
+    private final Map<String, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+
+
+    BlockingDownstreamClients(Environment environment, RestTemplateBuilder restTemplateBuilder) {
+        this.binder = Binder.get(environment);
+        this.restTemplateBuilder = restTemplateBuilder;
+    }
+
+
+    public RestTemplate restTemplate(String target, String baseUrl) {
+        final var settings = binder.bindOrCreate("http.client." + target, HttpClientSettings.class);
+        final var client = clients.computeIfAbsent(target, name -> HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(settings.maxConnections())
+                        .setMaxConnPerRoute(settings.maxConnections())
+                        .setConnPoolPolicy(settings.lifo() ? PoolReusePolicy.LIFO : PoolReusePolicy.FIFO)
+                        .setConnectionTimeToLive(TimeValue.ofMilliseconds(settings.maxLifeTime().toMillis()))
+                        .setDefaultSocketConfig(SocketConfig.custom()
+                                .setSoTimeout(Timeout.ofMilliseconds(settings.ioTimeout().toMillis()))
+                                .build())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(
+                                settings.pendingAcquireTimeout().toMillis()))
+                        .setConnectTimeout(Timeout.ofMilliseconds(settings.ioTimeout().toMillis()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(settings.ioTimeout().toMillis()))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(settings.maxIdleTime().toMillis()))
+                .build());
+        return restTemplateBuilder.rootUri(baseUrl)
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(client))
+                .additionalInterceptors(new BlockingFaultInjectionPropagation())
+                .build();
+    }
+
+
+    @Override
+    public void destroy() throws IOException {
+        for (var client : clients.values()) {
+            client.close();
+        }
+    }
+}
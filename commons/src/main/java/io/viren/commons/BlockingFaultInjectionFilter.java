@@ -0,0 +1,87 @@
+package io.viren.commons;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * {@link FaultInjectionFilter} for the servlet stack: behavior meant for another app is kept as a request
+ * attribute, where {@link BlockingFaultInjectionPropagation} picks it up.
+ */
+public class BlockingFaultInjectionFilter extends OncePerRequestFilter {
+
+    private static final String ATTRIBUTE = CustomizeBehavior.class.getName();
+
+    private final String app;
+    private final boolean lastHop;
+
+
+    BlockingFaultInjectionFilter(String app, boolean lastHop) {
+        this.app = app;
+        this.lastHop = lastHop;
+    }
+
+
+    /**
+     * The behavior the current request carries for downstream apps, the caches of the app step aside for it.
+     */
+    public static Optional<CustomizeBehavior> current() {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .map(attributes -> (CustomizeBehavior) attributes.getAttribute(ATTRIBUTE,
+                        RequestAttributes.SCOPE_REQUEST));
+    }
+
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        final Optional<CustomizeBehavior> behavior;
+        try {
+            behavior = CustomizeBehavior.of(request.getHeader(CustomizeBehavior.HEADER), request::getParameter)
+                    .filter(b -> !b.emulatesNothing());
+        } catch (ResponseStatusException e) {
+            response.sendError(e.getStatusCode().value(), e.getReason());
+            return;
+        }
+        if (behavior.isPresent() && !lastHop && !behavior.get().targetApp().equalsIgnoreCase(app)) {
+            request.setAttribute(ATTRIBUTE, behavior.get());
+        } else if (behavior.isPresent()) {
+            if (behavior.get().failsNow()) {
+                response.sendError(behavior.get().httpFailureCode(), "failed on purpose at " + app + " app.");
+                return;
+            }
+            try {
+                Thread.sleep(behavior.get().nextDelay().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.sendError(503);
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
+
+
+class BlockingFaultInjectionPropagation implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        BlockingFaultInjectionFilter.current()
+                .ifPresent(behavior -> request.getHeaders().set(CustomizeBehavior.HEADER, behavior.encode()));
+        return execution.execute(request, body);
+    }
+}
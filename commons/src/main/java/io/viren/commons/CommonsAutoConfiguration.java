@@ -0,0 +1,386 @@
+package io.viren.commons;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.ObservationRegistry;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.proxy.observation.ObservationProxyExecutionListener;
+import io.r2dbc.spi.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.AotDetector;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.opentelemetry.semconv.resource.attributes.ResourceAttributes.SERVICE_NAME;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
+/**
+ * Wires the shared pieces into each app: fault injection and inbound load shedding for whichever web stack runs, the
+ * downstream clients, query and startup metrics, and the R2DBC and span instrumentation where those are around.
+ * <p>
+ * The app named by {@code fault-injection.app}, the application name by default, applies the behaviors targeted at
+ * it and forwards the others. The last hop, {@code fault-injection.last-hop}, applies them all.
+ */
+@AutoConfiguration
+@RegisterReflectionForBinding({HttpClientSettings.class, ResilienceSettings.class, ConcurrencyLimitSettings.class})
+public class CommonsAutoConfiguration {
+
+    @Bean
+    QueryMetrics queryMetrics(MeterRegistry meterRegistry) {
+        return new QueryMetrics(meterRegistry);
+    }
+
+
+    @Bean
+    DownstreamClients downstreamClients(Environment environment) {
+        return new DownstreamClients(environment);
+    }
+
+
+    @Bean
+    ResilienceFilters resilienceFilters(Environment environment, MeterRegistry meterRegistry) {
+        return new ResilienceFilters(environment, meterRegistry);
+    }
+
+
+    @Bean
+    ConcurrencyLimits concurrencyLimits(Environment environment, MeterRegistry meterRegistry) {
+        return new ConcurrencyLimits(environment, meterRegistry);
+    }
+
+
+    @Bean
+    ConcurrencyLimitHealthIndicator concurrencyLimitHealthIndicator(ConcurrencyLimits concurrencyLimits) {
+        return new ConcurrencyLimitHealthIndicator(concurrencyLimits);
+    }
+
+
+    @Bean
+    TimeToReady timeToReady(MeterRegistry meterRegistry,
+                            @Value("${startup.exit-when-ready:false}") boolean exitWhenReady) {
+        return new TimeToReady(meterRegistry, exitWhenReady);
+    }
+
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = REACTIVE)
+    static class ReactiveConfiguration {
+
+        @Bean
+        FaultInjectionFilter faultInjectionFilter(
+                @Value("${fault-injection.app:${spring.application.name}}") String app,
+                @Value("${fault-injection.last-hop:false}") boolean lastHop) {
+            return new FaultInjectionFilter(app, lastHop);
+        }
+
+
+        @Bean
+        ConcurrencyLimitFilter concurrencyLimitFilter(ConcurrencyLimits concurrencyLimits) {
+            return new ConcurrencyLimitFilter(concurrencyLimits);
+        }
+    }
+
+
+    /**
+     * The {@code blocking} build.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = SERVLET)
+    static class ServletConfiguration {
+
+        private static final Logger LOG = LoggerFactory.getLogger(ServletConfiguration.class);
+
+
+        @Bean
+        BlockingFaultInjectionFilter blockingFaultInjectionFilter(
+                @Value("${fault-injection.app:${spring.application.name}}") String app,
+                @Value("${fault-injection.last-hop:false}") boolean lastHop) {
+            return new BlockingFaultInjectionFilter(app, lastHop);
+        }
+
+
+        @Bean
+        BlockingConcurrencyLimitFilter blockingConcurrencyLimitFilter(ConcurrencyLimits concurrencyLimits) {
+            return new BlockingConcurrencyLimitFilter(concurrencyLimits);
+        }
+
+
+        /**
+         * Requests run on virtual threads where the JDK has them (21 and later), on Tomcat's worker pool otherwise.
+         */
+        @Bean
+        @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+        TomcatProtocolHandlerCustomizer<?> virtualThreads() {
+            return protocolHandler -> virtualThreadPerTaskExecutor().ifPresentOrElse(protocolHandler::setExecutor,
+                    () -> LOG.info("No virtual threads on Java {}, serving from the worker pool.",
+                            Runtime.version().feature()));
+        }
+
+
+        /**
+         * Looked up reflectively as the build targets Java 17.
+         */
+        private static Optional<ExecutorService> virtualThreadPerTaskExecutor() {
+            try {
+                return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null));
+            } catch (ReflectiveOperationException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = SERVLET)
+    @ConditionalOnClass(name = "org.apache.hc.client5.http.impl.classic.HttpClients")
+    static class BlockingClientsConfiguration {
+
+        @Bean
+        BlockingDownstreamClients blockingDownstreamClients(Environment environment,
+                                                            RestTemplateBuilder restTemplateBuilder) {
+            return new BlockingDownstreamClients(environment, restTemplateBuilder);
+        }
+    }
+
+
+    /**
+     * Statement observations and connection acquire times of every R2DBC connection factory.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.r2dbc.proxy.ProxyConnectionFactory")
+    static class R2dbcConfiguration {
+
+        @Bean
+        static BeanPostProcessor connectionFactoryObservation(ObjectProvider<ObservationRegistry> observationRegistry,
+                                                              ObjectProvider<MeterRegistry> meterRegistry,
+                                                              Environment environment) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof ConnectionFactory connectionFactory)) {
+                        return bean;
+                    }
+                    return ProxyConnectionFactory.builder(connectionFactory)
+                            .listener(new ObservationProxyExecutionListener(observationRegistry.getObject(),
+                                    connectionFactory, environment.getProperty("spring.r2dbc.url", "r2dbc:h2:mem:///")))
+                            .listener(new ConnectionAcquireMetrics(meterRegistry, beanName))
+                            .build();
+                }
+            };
+        }
+    }
+
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.opentelemetry.sdk.trace.export.SpanExporter")
+    @ConditionalOnProperty(name = "tracing.exporter", havingValue = "file")
+    static class FileSpanExporterConfiguration {
+
+        @Bean
+        SpanExporter fileSpanExporter(@Value("${tracing.export.file:spans.jsonl}") Path file) throws IOException {
+            return new FileSpanExporter(file);
+        }
+    }
+
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.opentelemetry.sdk.trace.export.SpanExporter")
+    @ConditionalOnProperty(name = "tracing.exporter", havingValue = "memory")
+    static class InMemorySpanCollectorConfiguration {
+
+        @Bean
+        InMemorySpanCollector inMemorySpanCollector() {
+            return new InMemorySpanCollector();
+        }
+    }
+}
+
+
+/**
+ * Time from JVM start until ready to serve, the figure that AOT processing, AppCDS and native images bring down.
+ * With {@code startup.exit-when-ready} the app exits right after, for the CDS training run and for timing startup.
+ */
+class TimeToReady implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeToReady.class);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean exitWhenReady;
+
+
+    TimeToReady(MeterRegistry meterRegistry, boolean exitWhenReady) {
+        this.meterRegistry = meterRegistry;
+        this.exitWhenReady = exitWhenReady;
+    }
+
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        final var timeToReady = ManagementFactory.getRuntimeMXBean().getUptime();
+        TimeGauge.builder("application.time.to.ready", () -> timeToReady, MILLISECONDS)
+                .description("Time from JVM start until the application is ready to serve")
+                .register(meterRegistry);
+        LOG.info("Ready {} ms after JVM start, {} ms in Spring{}.", timeToReady, event.getTimeTaken().toMillis(),
+                AotDetector.useGeneratedArtifacts() ? " with AOT" : "");
+        if (exitWhenReady) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
+
+
+/**
+ * Times getting a connection from the pool, waiting for a free one included. Set against {@code repository.queries}
+ * and the {@code r2dbc.pool.pending} gauge it tells a saturated pool apart from slow statements.
+ */
+class ConnectionAcquireMetrics implements ProxyExecutionListener {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final String name;
+    private volatile Timer timer;
+
+
+    ConnectionAcquireMetrics(ObjectProvider<MeterRegistry> meterRegistry, String name) {
+        this.meterRegistry = meterRegistry;
+        this.name = name;
+    }
+
+
+    @Override
+    public void beforeMethod(MethodExecutionInfo executionInfo) {
+        if (isCreate(executionInfo)) {
+            executionInfo.getValueStore().put(ConnectionAcquireMetrics.class, System.nanoTime());
+        }
+    }
+
+
+    /**
+     * Timed in nanos, the execute duration of r2dbc-proxy comes from a millisecond clock.
+     */
+    @Override
+    public void afterMethod(MethodExecutionInfo executionInfo) {
+        if (isCreate(executionInfo)) {
+            timer().record(System.nanoTime() - executionInfo.getValueStore().get(ConnectionAcquireMetrics.class,
+                    Long.class), NANOSECONDS);
+        }
+    }
+
+
+    private static boolean isCreate(MethodExecutionInfo executionInfo) {
+        return executionInfo.getTarget() instanceof ConnectionFactory
+               && "create".equals(executionInfo.getMethod().getName());
+    }
+
+
+    /**
+     * Registered on first use, the listener being created before the meter registry.
+     */
+    private Timer timer() {
+        if (null == timer) {
+            timer = Timer.builder("r2dbc.pool.acquire")
+                    .tag("name", name)
+                    .register(meterRegistry.getObject());
+        }
+        return timer;
+    }
+}
+
+
+/**
+ * Appends finished spans to a file as JSON lines, for offline per-hop latency analysis.
+ */
+class FileSpanExporter implements SpanExporter {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BufferedWriter writer;
+
+
+    FileSpanExporter(Path file) throws IOException {
+        writer = Files.newBufferedWriter(file, CREATE, APPEND);
+    }
+
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (var span : spans) {
+                final Map<String, Object> line = new LinkedHashMap<>();
+                line.put("traceId", span.getTraceId());
+                line.put("spanId", span.getSpanId());
+                line.put("parentSpanId", span.getParentSpanId());
+                line.put("service", span.getResource().getAttribute(SERVICE_NAME));
+                line.put("name", span.getName());
+                line.put("kind", span.getKind());
+                line.put("startEpochNanos", span.getStartEpochNanos());
+                line.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000);
+                line.put("status", span.getStatus().getStatusCode());
+                final Map<String, Object> attributes = new LinkedHashMap<>();
+                span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+                line.put("attributes", attributes);
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.springframework.http.HttpStatusCode.valueOf;
+
+/**
+ * Tuning of the inbound concurrency limits, bound from {@code inbound.limit.*}.
+ *
+ * @param tolerance     how much slower than the long term average latency requests may get before the limit shrinks
+ * @param smoothing     weight of a new estimate in the limit, lower values react slower
+ * @param sampleWindow  requests averaged into one latency sample, the limit moves once per sample
+ * @param longWindow    samples averaged into the long term latency
+ * @param retryAfter    told to the clients of a rejected request
+ * @param maxEndpoints  endpoints beyond that many share one limit, so unknown paths cannot add meters without end
+ * @param excludedPaths never limited, the probes and long lived streams
+ * @param sheddingWindow how long after its last rejection the app still reports {@code sheddingStatus}
+ * @param sheddingStatus health while shedding: {@code DEGRADED} keeps the replica in the service, which taking every
+ *                       saturated replica out would turn overload into an outage; {@code OUT_OF_SERVICE} takes it out
+ */
+record ConcurrencyLimitSettings(@DefaultValue("true") boolean enabled,
+                                @DefaultValue("50") int initialLimit,
+                                @DefaultValue("20") int minLimit,
+                                @DefaultValue("1000") int maxLimit,
+                                @DefaultValue("2.0") double tolerance,
+                                @DefaultValue("0.2") double smoothing,
+                                @DefaultValue("20") int sampleWindow,
+                                @DefaultValue("100") int longWindow,
+                                @DefaultValue("1s") Duration retryAfter,
+                                @DefaultValue("64") int maxEndpoints,
+                                @DefaultValue({"/actuator/**"}) List<String> excludedPaths,
+                                @DefaultValue("10s") Duration sheddingWindow,
+                                @DefaultValue("DEGRADED") String sheddingStatus) {
+}
+
+
+/**
+ * The limits of every endpoint (method and path, numeric segments folded into {@code {id}}), shared by the reactive
+ * and the blocking filter.
+ */
+class ConcurrencyLimits {
+
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+    private static final String OTHER_ENDPOINTS = "other";
+
+    private final ConcurrencyLimitSettings settings;
+    private final List<PathPattern> excludedPaths;
+    private final String retryAfter;
+    private final Map<String, ConcurrencyLimit> limits = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+
+    ConcurrencyLimits(Environment environment, MeterRegistry meterRegistry) {
+        this.settings = Binder.get(environment).bindOrCreate("inbound.limit", ConcurrencyLimitSettings.class);
+        this.meterRegistry = meterRegistry;
+        excludedPaths = settings.excludedPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        retryAfter = String.valueOf(Math.max(1, settings.retryAfter().toSeconds()));
+    }
+
+
+    /**
+     * @return nothing when disabled or for an excluded path
+     */
+    Optional<ConcurrencyLimit> limitOf(String method, PathContainer path) {
+        if (!settings.enabled() || excludedPaths.stream().anyMatch(pattern -> pattern.matches(path))) {
+            return Optional.empty();
+        }
+        final var endpoint = method + " " + ID_SEGMENT.matcher(path.value()).replaceAll("/{id}");
+        final var limit = limits.get(endpoint);
+        if (null != limit) {
+            return Optional.of(limit);
+        }
+        return Optional.of(limits.computeIfAbsent(limits.size() < settings.maxEndpoints() ? endpoint : OTHER_ENDPOINTS,
+                name -> new ConcurrencyLimit(name, settings, meterRegistry)));
+    }
+
+
+    /**
+     * Seconds told to the clients of a rejected request.
+     */
+    String retryAfter() {
+        return retryAfter;
+    }
+
+
+    ConcurrencyLimitSettings settings() {
+        return settings;
+    }
+
+
+    Map<String, ConcurrencyLimit> limits() {
+        return limits;
+    }
+}
+
+
+/**
+ * Caps the requests in flight per endpoint and sheds the excess with a fast 503 and {@code Retry-After}, rather than
+ * queueing it until the downstream timeouts fire. Ordered right after the observation filter, so shed requests still
+ * show in {@code http.server.requests}.
+ */
+class ConcurrencyLimitFilter implements WebFilter, Ordered {
+
+    private final ConcurrencyLimits limits;
+
+
+    ConcurrencyLimitFilter(ConcurrencyLimits limits) {
+        this.limits = limits;
+    }
+
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        final var request = exchange.getRequest();
+        final var limit = limits.limitOf(request.getMethod().name(), request.getPath().pathWithinApplication());
+        if (limit.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        if (!limit.get().tryAcquire()) {
+            final var response = exchange.getResponse();
+            response.setStatusCode(valueOf(503));
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, limits.retryAfter());
+            return response.setComplete();
+        }
+        final var start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> limit.get().release(signal == SignalType.CANCEL ? -1 : System.nanoTime() - start));
+    }
+
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+}
+
+
+/**
+ * Gradient limit of one endpoint, after the gradient2 limit of Netflix' concurrency-limits: once per sample window
+ * the limit follows the ratio of long term to current average latency, plus a sqrt(limit) headroom to probe for
+ * more, and shrinks once requests get slower than the tolerance allows. It only grows while at least half of it was
+ * in use during the window.
+ */
+class ConcurrencyLimit {
+
+    private final ConcurrencyLimitSettings settings;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejections;
+    private final double longAlpha;
+    private volatile int limit;
+    private volatile long lastRejection;
+    private double estimatedLimit;
+    private double longLatency;
+    private long windowLatency;
+    private int windowSamples;
+    private int windowMaxInUse;
+
+
+    ConcurrencyLimit(String endpoint, ConcurrencyLimitSettings settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        estimatedLimit = settings.initialLimit();
+        limit = settings.initialLimit();
+        longAlpha = 2.0 / (settings.longWindow() + 1);
+        rejections = meterRegistry.counter("inbound.rejections", "endpoint", endpoint);
+        Gauge.builder("inbound.concurrency.limit", this, ConcurrencyLimit::limit)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("inbound.concurrency.in-flight", inFlight, AtomicInteger::get)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+
+
+    int limit() {
+        return limit;
+    }
+
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+
+    double rejected() {
+        return rejections.count();
+    }
+
+
+    boolean tryAcquire() {
+        for (var current = inFlight.get(); current < limit; current = inFlight.get()) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        lastRejection = System.nanoTime();
+        rejections.increment();
+        return false;
+    }
+
+
+    boolean rejectedWithin(Duration window) {
+        return rejected() > 0 && System.nanoTime() - lastRejection < window.toNanos();
+    }
+
+
+    /**
+     * @param latencyInNanos negative for a cancelled request, which says nothing about the latency
+     */
+    void release(long latencyInNanos) {
+        final var inUse = inFlight.getAndDecrement();
+        if (latencyInNanos >= 0) {
+            update(latencyInNanos, inUse);
+        }
+    }
+
+
+    private synchronized void update(long latencyInNanos, int inUse) {
+        windowLatency += latencyInNanos;
+        windowMaxInUse = Math.max(windowMaxInUse, inUse);
+        if (++windowSamples < settings.sampleWindow()) {
+            return;
+        }
+        final var shortLatency = (double) windowLatency / windowSamples;
+        final var maxInUse = windowMaxInUse;
+        windowLatency = 0;
+        windowSamples = 0;
+        windowMaxInUse = 0;
+        longLatency = 0 == longLatency ? shortLatency : longLatency + (shortLatency - longLatency) * longAlpha;
+        if (longLatency / shortLatency > 2) {
+            // recovering from a slow phase, let the long term latency catch up
+            longLatency *= 0.95;
+        }
+        if (maxInUse < estimatedLimit / 2) {
+            return;
+        }
+        final var gradient = Math.max(0.5, Math.min(1.0, settings.tolerance() * longLatency / shortLatency));
+        final var newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(settings.minLimit(), Math.min(settings.maxLimit(),
+                estimatedLimit * (1 - settings.smoothing()) + newLimit * settings.smoothing()));
+        limit = (int) estimatedLimit;
+    }
+}
+
+
+/**
+ * Current limit, requests in flight and rejections per endpoint. Part of the readiness group, it reports the
+ * configured shedding status while any endpoint rejected requests within the shedding window.
+ */
+class ConcurrencyLimitHealthIndicator implements HealthIndicator {
+
+    private final ConcurrencyLimits concurrencyLimits;
+
+
+    ConcurrencyLimitHealthIndicator(ConcurrencyLimits concurrencyLimits) {
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
+
+    @Override
+    public Health health() {
+        final var settings = concurrencyLimits.settings();
+        final var shedding = concurrencyLimits.limits().values().stream()
+                .anyMatch(limit -> limit.rejectedWithin(settings.sheddingWindow()));
+        final var health = Health.status(shedding ? new Status(settings.sheddingStatus(), "shedding load") : Status.UP);
+        concurrencyLimits.limits().forEach((endpoint, limit) -> health.withDetail(endpoint,
+                Map.of("limit", limit.limit(), "inFlight", limit.inFlight(), "rejected", limit.rejected())));
+        return health.build();
+    }
+}
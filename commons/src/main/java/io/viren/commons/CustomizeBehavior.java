@@ -0,0 +1,108 @@
+package io.viren.commons;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.springframework.http.HttpStatusCode.valueOf;
+
+/**
+ * Failure and delay emulation asked for by a caller. It is parsed once per request at the edge, from the query
+ * params or from the {@value #HEADER} header set by an upstream app, and carried in the Reactor context from then on.
+ */
+public record CustomizeBehavior(boolean emulateFailure, int httpFailureCode, double failureProbability,
+                                boolean emulateDelay, int delayInMs, DelayDistribution delayDistribution,
+                                String targetApp) {
+
+    public static final String HEADER = "X-Customize-Behavior";
+
+
+    static Optional<CustomizeBehavior> of(ServerHttpRequest request) {
+        return of(request.getHeaders().getFirst(HEADER), request.getQueryParams()::getFirst);
+    }
+
+
+    /**
+     * @param header      the {@value #HEADER} header, {@code null} when absent
+     * @param queryParams first value of a query param by name, {@code null} when absent
+     */
+    static Optional<CustomizeBehavior> of(String header, Function<String, String> queryParams) {
+        if (null != header) {
+            final Map<String, String> values = new HashMap<>();
+            for (var pair : header.split(";")) {
+                final var separator = pair.indexOf('=');
+                if (separator > 0) {
+                    values.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+                }
+            }
+            return Optional.of(of(values::get));
+        }
+        if (null == queryParams.apply("emulateFailure") && null == queryParams.apply("emulateDelay")) {
+            return Optional.empty();
+        }
+        return Optional.of(of(queryParams));
+    }
+
+
+    private static CustomizeBehavior of(Function<String, String> values) {
+        try {
+            final var httpFailureCode = Integer.parseInt(requireNonNullElse(values.apply("httpFailureCode"), "500"));
+            valueOf(httpFailureCode);
+            return new CustomizeBehavior("YES".equalsIgnoreCase(values.apply("emulateFailure")), httpFailureCode,
+                    Double.parseDouble(requireNonNullElse(values.apply("failureProbability"), "1")),
+                    "YES".equalsIgnoreCase(values.apply("emulateDelay")),
+                    Integer.parseInt(requireNonNullElse(values.apply("delayInMs"), "0")),
+                    DelayDistribution.valueOf(requireNonNullElse(values.apply("delayDistribution"), "fixed")
+                            .toUpperCase()),
+                    requireNonNullElse(values.apply("customizeBehaviorTargetApp"), "tracking"));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(valueOf(400), "Supply valid customize behavior.", e);
+        }
+    }
+
+
+    public boolean emulatesNothing() {
+        return !emulateFailure && !emulateDelay;
+    }
+
+
+    boolean failsNow() {
+        return emulateFailure
+               && (failureProbability >= 1 || ThreadLocalRandom.current().nextDouble() < failureProbability);
+    }
+
+
+    Duration nextDelay() {
+        return emulateDelay ? delayDistribution.sample(delayInMs) : Duration.ZERO;
+    }
+
+
+    String encode() {
+        return "emulateFailure=" + (emulateFailure ? "yes" : "no") + ";httpFailureCode=" + httpFailureCode
+               + ";failureProbability=" + failureProbability + ";emulateDelay=" + (emulateDelay ? "yes" : "no")
+               + ";delayInMs=" + delayInMs + ";delayDistribution=" + delayDistribution.name().toLowerCase()
+               + ";customizeBehaviorTargetApp=" + targetApp;
+    }
+}
+
+
+enum DelayDistribution {
+    FIXED, UNIFORM, EXPONENTIAL;
+
+
+    Duration sample(int meanInMs) {
+        final var random = ThreadLocalRandom.current();
+        return Duration.ofMillis(switch (this) {
+            case FIXED -> meanInMs;
+            case UNIFORM -> random.nextLong(2L * meanInMs + 1);
+            case EXPONENTIAL -> (long) (-meanInMs * Math.log(1 - random.nextDouble()));
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package io.viren.commons;
+
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tuning of the connection pool and protocol towards one downstream app, bound from {@code http.client.<target>.*}.
+ *
+ * @param lifo      lease the most recently used connection first, letting the surplus ones idle out after a burst
+ * @param h2c       multiplex requests over cleartext HTTP/2 (prior knowledge), the downstream must enable
+ *                  {@code server.http2.enabled}
+ * @param ioTimeout connect, read and write timeout of the socket, the backstop behind the adaptive timeouts
+ */
+record HttpClientSettings(@DefaultValue("500") int maxConnections,
+                          @DefaultValue("1000") int pendingAcquireMaxCount,
+                          @DefaultValue("5s") Duration pendingAcquireTimeout,
+                          @DefaultValue("30s") Duration maxIdleTime,
+                          @DefaultValue("5m") Duration maxLifeTime,
+                          @DefaultValue("30s") Duration evictInBackground,
+                          @DefaultValue("true") boolean lifo,
+                          @DefaultValue("false") boolean h2c,
+                          @DefaultValue("false") boolean compress,
+                          @DefaultValue("10s") Duration ioTimeout) {
+}
+
+
+/**
+ * Hands out one pooled connector per downstream app. Pools publish the {@code reactor.netty.connection.provider.*}
+ * metrics tagged with the target name.
+ */
+public class DownstreamClients implements DisposableBean {
+
+    private final Binder binder;
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+
+
+    public DownstreamClients(Environment environment) {
+        this.binder = Binder.get(environment);
+    }
+
+
+    public ReactorClientHttpConnector connector(String target) {
+        final var settings = binder.bindOrCreate("http.client." + target, HttpClientSettings.class);
+        final var provider = providers.computeIfAbsent(target, name -> {
+            final var builder = ConnectionProvider.builder(name)
+                    .maxConnections(settings.maxConnections())
+                    .pendingAcquireMaxCount(settings.pendingAcquireMaxCount())
+                    .pendingAcquireTimeout(settings.pendingAcquireTimeout())
+                    .maxIdleTime(settings.maxIdleTime())
+                    .maxLifeTime(settings.maxLifeTime())
+                    .evictInBackground(settings.evictInBackground())
+                    .metrics(true);
+            return (settings.lifo() ? builder.lifo() : builder.fifo()).build();
+        });
+        final var timeoutInMilliseconds = (int) settings.ioTimeout().toMillis();
+        return new ReactorClientHttpConnector(HttpClient.create(provider)
+                .protocol(settings.h2c() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .option(CONNECT_TIMEOUT_MILLIS, timeoutInMilliseconds)
+                .doOnConnected(conn -> conn.addHandlerLast(new ReadTimeoutHandler(timeoutInMilliseconds, MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(timeoutInMilliseconds, MILLISECONDS)))
+                .compress(settings.compress()));
+    }
+
+
+    @Override
+    public void destroy() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+}
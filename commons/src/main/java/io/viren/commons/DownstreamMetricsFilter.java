@@ -0,0 +1,73 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times every call to a downstream app, tagged by target app, uri template and outcome. Being registered ahead of
+ * {@link TimeoutFilter}, it sees connect/read timeouts as the 408 they are mapped to (outcome {@code TIMEOUT}).
+ */
+public class DownstreamMetricsFilter implements ExchangeFilterFunction {
+
+    private static final String URI_TEMPLATE = WebClient.class.getName() + ".uriTemplate";
+
+    private final MeterRegistry meterRegistry;
+    private final String target;
+
+
+    public DownstreamMetricsFilter(MeterRegistry meterRegistry, String target) {
+        this.meterRegistry = meterRegistry;
+        this.target = target;
+    }
+
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            final var sample = Timer.start(meterRegistry);
+            return next.exchange(request)
+                    .doOnSuccess(response -> sample.stop(timer(request, response.statusCode())))
+                    .doOnError(error -> sample.stop(timer(request, error instanceof ResponseStatusException e
+                            ? e.getStatusCode()
+                            : null)))
+                    .doOnCancel(() -> sample.stop(timer(request, "CANCELLED", "NONE")));
+        });
+    }
+
+
+    private Timer timer(ClientRequest request, HttpStatusCode status) {
+        if (null == status) {
+            return timer(request, "UNKNOWN", "IO_ERROR");
+        }
+        final String outcome;
+        if (status.value() == 408) {
+            outcome = "TIMEOUT";
+        } else if (status.is5xxServerError()) {
+            outcome = "SERVER_ERROR";
+        } else if (status.is4xxClientError()) {
+            outcome = "CLIENT_ERROR";
+        } else {
+            outcome = "SUCCESS";
+        }
+        return timer(request, outcome, String.valueOf(status.value()));
+    }
+
+
+    private Timer timer(ClientRequest request, String outcome, String status) {
+        return Timer.builder("downstream.requests")
+                .tag("target", target)
+                .tag("method", request.method().name())
+                .tag("uri", request.attribute(URI_TEMPLATE).map(String::valueOf).orElse("none"))
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,55 @@
+package io.viren.commons;
+
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+import static org.springframework.http.HttpStatusCode.valueOf;
+import static reactor.core.publisher.Mono.error;
+
+/**
+ * Applies the {@link CustomizeBehavior} meant for this app and carries any other one in the Reactor context, for
+ * {@link FaultInjectionPropagation} to forward downstream. The last hop applies it whatever app it targets.
+ */
+class FaultInjectionFilter implements WebFilter {
+
+    private final String app;
+    private final boolean lastHop;
+
+
+    FaultInjectionFilter(String app, boolean lastHop) {
+        this.app = app;
+        this.lastHop = lastHop;
+    }
+
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        final Optional<CustomizeBehavior> behavior;
+        try {
+            behavior = CustomizeBehavior.of(exchange.getRequest()).filter(b -> !b.emulatesNothing());
+        } catch (ResponseStatusException e) {
+            return Mono.error(e);
+        }
+        if (behavior.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        final var customizeBehavior = behavior.get();
+        if (!lastHop && !customizeBehavior.targetApp().equalsIgnoreCase(app)) {
+            return chain.filter(exchange)
+                    .contextWrite(context -> context.put(CustomizeBehavior.class, customizeBehavior));
+        }
+        if (customizeBehavior.failsNow()) {
+            return Mono.error(new ResponseStatusException(valueOf(customizeBehavior.httpFailureCode()),
+                    "failed on purpose at " + app + " app."));
+        }
+        final var delay = customizeBehavior.nextDelay();
+        return delay.isZero()
+                ? chain.filter(exchange)
+                : Mono.delay(delay).then(Mono.defer(() -> chain.filter(exchange)));
+    }
+}
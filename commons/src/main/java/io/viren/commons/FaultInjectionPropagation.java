@@ -0,0 +1,23 @@
+package io.viren.commons;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Forwards the {@link CustomizeBehavior} of the current request, from the Reactor context, to the downstream app.
+ */
+public class FaultInjectionPropagation implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> next.exchange(
+                context.<CustomizeBehavior>getOrEmpty(CustomizeBehavior.class)
+                        .map(behavior -> ClientRequest.from(request)
+                                .header(CustomizeBehavior.HEADER, behavior.encode())
+                                .build())
+                        .orElse(request)));
+    }
+}
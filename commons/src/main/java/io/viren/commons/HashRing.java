@@ -0,0 +1,48 @@
+package io.viren.commons;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of customer ids onto shards numbered 0 to {@code shards - 1}: each shard owns the arcs of the
+ * ring ending at its virtual nodes, so adding one of n shards hands it about 1/n of the customers, taken from all the
+ * others, and moves nobody else. Points only depend on the shard numbers, so customers routing and orders checking
+ * ownership build the same ring from the same count.
+ */
+public class HashRing {
+
+    private final int shards;
+    private final NavigableMap<Long, Integer> ring = new TreeMap<>();
+
+
+    public HashRing(int shards, int virtualNodes) {
+        this.shards = shards;
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // above every int, so no customer id hashes onto a virtual node, always landing on its shard
+                ring.put(mix((long) (shard + 1) << 32 | node), shard);
+            }
+        }
+    }
+
+
+    public int shards() {
+        return shards;
+    }
+
+
+    public int shardOf(int customerId) {
+        final var owner = ring.ceilingEntry(mix(customerId));
+        return (null == owner ? ring.firstEntry() : owner).getValue();
+    }
+
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, spreading sequential ids all over the ring.
+     */
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+}
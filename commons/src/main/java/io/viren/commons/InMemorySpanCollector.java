@@ -0,0 +1,48 @@
+package io.viren.commons;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps finished spans in memory so tests can assert on them, e.g. that one trace spans every hop of a request.
+ * Nothing is ever evicted, hence not for production.
+ */
+public class InMemorySpanCollector implements SpanExporter {
+
+    private final Queue<SpanData> spans = new ConcurrentLinkedQueue<>();
+
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        this.spans.addAll(spans);
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    public List<SpanData> spans() {
+        return List.copyOf(spans);
+    }
+
+
+    public void reset() {
+        spans.clear();
+    }
+}
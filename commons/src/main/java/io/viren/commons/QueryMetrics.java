@@ -0,0 +1,64 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.function.Supplier;
+
+/**
+ * Times repository queries from subscription to completion, which the invocation based Spring Data repository
+ * metrics cannot do for reactive return types.
+ */
+public class QueryMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+
+    public QueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+
+    public <T> Flux<T> time(String query, Flux<T> results) {
+        return Flux.defer(() -> {
+            final var sample = Timer.start(meterRegistry);
+            return results.doFinally(signal -> sample.stop(timer(query, signal)));
+        });
+    }
+
+
+    public <T> Mono<T> time(String query, Mono<T> result) {
+        return Mono.defer(() -> {
+            final var sample = Timer.start(meterRegistry);
+            return result.doFinally(signal -> sample.stop(timer(query, signal)));
+        });
+    }
+
+
+    public <T> T time(String query, Supplier<T> result) {
+        final var sample = Timer.start(meterRegistry);
+        var signal = SignalType.ON_ERROR;
+        try {
+            final var value = result.get();
+            signal = SignalType.ON_COMPLETE;
+            return value;
+        } finally {
+            sample.stop(timer(query, signal));
+        }
+    }
+
+
+    private Timer timer(String query, SignalType signal) {
+        return Timer.builder("repository.queries")
+                .tag("query", query)
+                .tag("outcome", switch (signal) {
+                    case ON_ERROR -> "ERROR";
+                    case CANCEL -> "CANCELLED";
+                    default -> "SUCCESS";
+                })
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,366 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.handler.timeout.TimeoutException;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.http.HttpStatusCode.valueOf;
+import static reactor.core.publisher.Mono.error;
+
+/**
+ * Tuning of {@link ResilienceFilter} for one downstream app, bound from {@code resilience.<target>.*}.
+ *
+ * @param timeoutPercentile observed latency percentile the per-attempt timeout derives from, multiplied by
+ *                          {@code timeoutMultiplier} and clamped to [{@code minTimeout}, {@code maxTimeout}]
+ * @param hedgePercentile   observed latency percentile after which an idempotent call is sent a second time
+ */
+record ResilienceSettings(@DefaultValue("256") int maxConcurrentCalls,
+                          @DefaultValue("2") int maxRetries,
+                          @DefaultValue("50ms") Duration retryBackoff,
+                          @DefaultValue("50") int circuitBreakerWindowSize,
+                          @DefaultValue("20") int circuitBreakerMinimumCalls,
+                          @DefaultValue("0.5") double circuitBreakerFailureRateThreshold,
+                          @DefaultValue("10s") Duration circuitBreakerOpenDuration,
+                          @DefaultValue("5") int circuitBreakerHalfOpenCalls,
+                          @DefaultValue("200") int latencyWindowSize,
+                          @DefaultValue("20") int latencyMinimumSamples,
+                          @DefaultValue("true") boolean adaptiveTimeoutEnabled,
+                          @DefaultValue("0.99") double timeoutPercentile,
+                          @DefaultValue("3") double timeoutMultiplier,
+                          @DefaultValue("200ms") Duration minTimeout,
+                          @DefaultValue("10s") Duration maxTimeout,
+                          @DefaultValue("true") boolean hedgingEnabled,
+                          @DefaultValue("0.95") double hedgePercentile) {
+}
+
+
+/**
+ * Guards the calls to one downstream app:
+ * <ul>
+ *     <li>a bulkhead caps concurrent calls,</li>
+ *     <li>a circuit breaker fails fast while the downstream keeps failing,</li>
+ *     <li>every attempt times out after a multiple of the observed latency percentile,</li>
+ *     <li>idempotent calls (GET, or flagged with {@link #IDEMPOTENT}) are retried with jittered backoff and hedged
+ *     by a second request once they are slower than the observed hedge percentile.</li>
+ * </ul>
+ * Rejections by the bulkhead or the open circuit surface as 503, timeouts as 408 just like {@link TimeoutFilter}.
+ * <p>
+ * Calls carrying a {@link CustomizeBehavior} only go through the bulkhead: their emulated failures and delays are
+ * sent once, without a timeout, and neither count towards the circuit breaker nor the observed latencies.
+ */
+public class ResilienceFilter implements ExchangeFilterFunction {
+
+    public static final String IDEMPOTENT = ResilienceFilter.class.getName() + ".idempotent";
+
+    private final String target;
+    private final Tags tags;
+    private final ResilienceSettings settings;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyWindow latencyWindow;
+    private final Retry retry;
+    private final Counter retries;
+    private final Counter hedges;
+    private final MeterRegistry meterRegistry;
+
+
+    ResilienceFilter(String target, String instance, ResilienceSettings settings, MeterRegistry meterRegistry) {
+        this.target = target;
+        this.tags = Tags.of("target", target, "instance", instance);
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        bulkhead = new Semaphore(settings.maxConcurrentCalls());
+        circuitBreaker = new CircuitBreaker(settings);
+        latencyWindow = new LatencyWindow(settings.latencyWindowSize(), settings.latencyMinimumSamples());
+        retries = meterRegistry.counter("downstream.retries", tags);
+        hedges = meterRegistry.counter("downstream.hedges", tags);
+        retry = Retry.backoff(settings.maxRetries(), settings.retryBackoff())
+                .jitter(0.5)
+                .filter(ResilienceFilter::isRetryable)
+                .doBeforeRetry(signal -> retries.increment())
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        Gauge.builder("downstream.circuit.state", circuitBreaker, breaker -> breaker.state().ordinal())
+                .description("0 closed, 1 open, 2 half open")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("downstream.timeout", this, filter -> filter.timeout().toMillis())
+                .baseUnit("milliseconds")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("downstream.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        final var idempotent = request.method() == HttpMethod.GET
+                               || request.attribute(IDEMPOTENT).map(Boolean.TRUE::equals).orElse(false);
+        return Mono.deferContextual(context -> {
+            if (!bulkhead.tryAcquire()) {
+                return Mono.error(rejected("bulkhead full"));
+            }
+            if (injectsFaults(request, context)) {
+                return next.exchange(request).doFinally(signal -> bulkhead.release());
+            }
+            final var attempts = new AtomicInteger();
+            final var attempt = Mono.defer(() -> {
+                final var lastAttempt = !idempotent || attempts.incrementAndGet() > settings.maxRetries();
+                return (idempotent ? hedged(request, next) : guarded(request, next))
+                        .flatMap(response -> !lastAttempt && isRetryable(response)
+                                ? response.releaseBody().then(Mono.error(new RetryableStatusException(response)))
+                                : Mono.just(response));
+            });
+            return (idempotent ? attempt.retryWhen(retry) : attempt)
+                    .doFinally(signal -> bulkhead.release());
+        });
+    }
+
+
+    private Mono<ClientResponse> hedged(ClientRequest request, ExchangeFunction next) {
+        final var hedgeDelay = settings.hedgingEnabled()
+                ? latencyWindow.percentile(settings.hedgePercentile())
+                : Optional.<Duration>empty();
+        if (hedgeDelay.isEmpty()) {
+            return guarded(request, next);
+        }
+        return Mono.firstWithSignal(guarded(request, next),
+                Mono.delay(hedgeDelay.get())
+                        .doOnNext(tick -> hedges.increment())
+                        .then(guarded(request, next)));
+    }
+
+
+    private Mono<ClientResponse> guarded(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                meterRegistry.counter("downstream.rejections", tags.and("reason", "circuit-open")).increment();
+                return Mono.error(new ResponseStatusException(valueOf(503), "circuit breaker open for " + target));
+            }
+            final var start = System.nanoTime();
+            return next.exchange(request)
+                    .timeout(timeout())
+                    .onErrorMap(java.util.concurrent.TimeoutException.class,
+                            error -> new ResponseStatusException(valueOf(408)))
+                    .doOnSuccess(response -> {
+                        final var failure = isFailure(response.statusCode());
+                        circuitBreaker.record(!failure);
+                        if (!failure) {
+                            latencyWindow.record(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(error -> circuitBreaker.record(false))
+                    .doOnCancel(circuitBreaker::releasePermission);
+        });
+    }
+
+
+    private Duration timeout() {
+        if (!settings.adaptiveTimeoutEnabled()) {
+            return settings.maxTimeout();
+        }
+        return latencyWindow.percentile(settings.timeoutPercentile())
+                .map(latency -> Duration.ofNanos((long) (latency.toNanos() * settings.timeoutMultiplier())))
+                .map(timeout -> timeout.compareTo(settings.minTimeout()) < 0 ? settings.minTimeout() : timeout)
+                .map(timeout -> timeout.compareTo(settings.maxTimeout()) > 0 ? settings.maxTimeout() : timeout)
+                .orElse(settings.maxTimeout());
+    }
+
+
+    private ResponseStatusException rejected(String reason) {
+        meterRegistry.counter("downstream.rejections", tags.and("reason", reason.replace(' ', '-'))).increment();
+        return new ResponseStatusException(valueOf(503), reason + " for " + target);
+    }
+
+
+    /**
+     * The behavior is still in the context here, {@link FaultInjectionPropagation} turns it into the header later.
+     */
+    private static boolean injectsFaults(ClientRequest request, ContextView context) {
+        return context.hasKey(CustomizeBehavior.class) || request.headers().containsKey(CustomizeBehavior.HEADER);
+    }
+
+
+    private static boolean isFailure(HttpStatusCode status) {
+        return status.is5xxServerError() || status.value() == 408;
+    }
+
+
+    /**
+     * Not when shed with a {@code Retry-After}, retrying right away would only add to the downstream's overload.
+     */
+    private static boolean isRetryable(ClientResponse response) {
+        return isFailure(response.statusCode()) && response.headers().header(HttpHeaders.RETRY_AFTER).isEmpty();
+    }
+
+
+    private static boolean isRetryable(Throwable error) {
+        return error instanceof RetryableStatusException
+               || error instanceof ResponseStatusException e && e.getStatusCode().value() == 408
+               || error instanceof WebClientRequestException;
+    }
+
+
+    private static class RetryableStatusException extends RuntimeException {
+
+        RetryableStatusException(ClientResponse response) {
+            super(response.statusCode().toString(), null, false, false);
+        }
+    }
+}
+
+
+/**
+ * Count based circuit breaker: opens once the failure rate of the last calls reaches the threshold, lets a few
+ * trial calls through after the open duration and closes again when they all succeed.
+ */
+class CircuitBreaker {
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+
+    private final ResilienceSettings settings;
+    private final boolean[] outcomes;
+    private int calls;
+    private int failures;
+    private int next;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int trialPermits;
+    private int trialSuccesses;
+
+
+    CircuitBreaker(ResilienceSettings settings) {
+        this.settings = settings;
+        outcomes = new boolean[settings.circuitBreakerWindowSize()];
+    }
+
+
+    synchronized State state() {
+        return state;
+    }
+
+
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            trialPermits = 0;
+            trialSuccesses = 0;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> trialPermits < settings.circuitBreakerHalfOpenCalls() && ++trialPermits > 0;
+        };
+    }
+
+
+    synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && trialPermits > 0) {
+            trialPermits--;
+        }
+    }
+
+
+    synchronized void record(boolean success) {
+        switch (state) {
+            case HALF_OPEN -> {
+                if (!success) {
+                    open();
+                } else if (++trialSuccesses >= settings.circuitBreakerHalfOpenCalls()) {
+                    state = State.CLOSED;
+                    calls = 0;
+                    failures = 0;
+                }
+            }
+            case CLOSED -> {
+                if (calls == outcomes.length) {
+                    failures -= outcomes[next] ? 0 : 1;
+                } else {
+                    calls++;
+                }
+                outcomes[next] = success;
+                failures += success ? 0 : 1;
+                next = (next + 1) % outcomes.length;
+                if (calls >= settings.circuitBreakerMinimumCalls()
+                    && failures >= calls * settings.circuitBreakerFailureRateThreshold()) {
+                    open();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + settings.circuitBreakerOpenDuration().toNanos();
+    }
+}
+
+
+/**
+ * Latencies of the last successful calls. Percentiles are recomputed at most once a second, so reading them on
+ * every call stays cheap.
+ */
+class LatencyWindow {
+
+    private static final long RECOMPUTE_INTERVAL = Duration.ofSeconds(1).toNanos();
+
+    private final long[] latencies;
+    private final int minimumSamples;
+    private int count;
+    private int next;
+    private long computedAt;
+    private long[] sorted = new long[0];
+
+
+    LatencyWindow(int size, int minimumSamples) {
+        latencies = new long[size];
+        this.minimumSamples = minimumSamples;
+    }
+
+
+    synchronized void record(long latencyInNanos) {
+        latencies[next] = latencyInNanos;
+        next = (next + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+    }
+
+
+    synchronized Optional<Duration> percentile(double percentile) {
+        if (count < minimumSamples) {
+            return Optional.empty();
+        }
+        final var now = System.nanoTime();
+        if (sorted.length == 0 || now - computedAt >= RECOMPUTE_INTERVAL) {
+            sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            computedAt = now;
+        }
+        return Optional.of(Duration.ofNanos(sorted[Math.min(sorted.length - 1, (int) (percentile * sorted.length))]));
+    }
+}
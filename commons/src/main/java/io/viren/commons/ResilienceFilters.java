@@ -0,0 +1,34 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+/**
+ * Builds the {@link ResilienceFilter} of a downstream app, tuned from {@code resilience.<target>.*}.
+ */
+public class ResilienceFilters {
+
+    private final Binder binder;
+    private final MeterRegistry meterRegistry;
+
+
+    public ResilienceFilters(Environment environment, MeterRegistry meterRegistry) {
+        this.binder = Binder.get(environment);
+        this.meterRegistry = meterRegistry;
+    }
+
+
+    public ResilienceFilter forTarget(String target) {
+        return forTarget(target, target);
+    }
+
+
+    /**
+     * @param instance one of the replicas of the target, guarded on its own under the settings of the target
+     */
+    public ResilienceFilter forTarget(String target, String instance) {
+        return new ResilienceFilter(target, instance,
+                binder.bindOrCreate("resilience." + target, ResilienceSettings.class), meterRegistry);
+    }
+}
@@ -0,0 +1,27 @@
+package io.viren.commons;
+
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.TimeoutException;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Maps connect and read timeouts of a downstream call to a 408.
+ */
+public class TimeoutFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return next.exchange(request)
+                .onErrorMap(error -> error instanceof WebClientRequestException ||
+                                     error instanceof ConnectTimeoutException || error instanceof TimeoutException,
+                        error -> new ResponseStatusException(HttpStatusCode.valueOf(408)));
+
+    }
+}
@@ -0,0 +1,81 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockingConcurrencyLimitFilterTest {
+
+    private final ConcurrencyLimits limits = new ConcurrencyLimits(new MockEnvironment()
+            .withProperty("inbound.limit.initial-limit", "1")
+            .withProperty("inbound.limit.min-limit", "1"), new SimpleMeterRegistry());
+    private final BlockingConcurrencyLimitFilter filter = new BlockingConcurrencyLimitFilter(limits);
+
+
+    @Test
+    void shedsWhatIsBeyondTheLimitOfTheEndpoint() throws Exception {
+        final var shed = new AtomicInteger();
+        final var inner = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/customers/1"), new MockHttpServletResponse(),
+                new MockFilterChain(new HttpServlet() {
+                    @Override
+                    protected void service(HttpServletRequest request,
+                                           HttpServletResponse response) {
+                        try {
+                            filter.doFilter(new MockHttpServletRequest("GET", "/customers/2"), inner,
+                                    new MockFilterChain());
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        shed.set(inner.getStatus());
+                    }
+                }));
+
+        assertThat(shed).hasValue(503);
+        assertThat(inner.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(limits.limits().get("GET /customers/{id}").inFlight()).isZero();
+    }
+
+
+    @Test
+    void letsExcludedPathsThrough() throws Exception {
+        final var response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(limits.limits()).isEmpty();
+    }
+
+
+    @Test
+    void releasesTheSlotWhenTheRequestFails() {
+        final var chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request,
+                                   HttpServletResponse response) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        try {
+            filter.doFilter(new MockHttpServletRequest("GET", "/customers/1"), new MockHttpServletResponse(), chain);
+        } catch (Exception expected) {
+            // the slot is what matters
+        }
+
+        assertThat(limits.limits().get("GET /customers/{id}").inFlight()).isZero();
+    }
+}
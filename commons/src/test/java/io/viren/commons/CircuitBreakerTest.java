@@ -0,0 +1,129 @@
+package io.viren.commons;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    static ResilienceSettings settings(Map<String, String> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bindOrCreate("resilience", ResilienceSettings.class);
+    }
+
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(settings(Map.of(
+            "resilience.circuit-breaker-window-size", "4",
+            "resilience.circuit-breaker-minimum-calls", "4",
+            "resilience.circuit-breaker-failure-rate-threshold", "0.5",
+            "resilience.circuit-breaker-open-duration", "0s",
+            "resilience.circuit-breaker-half-open-calls", "2")));
+
+
+    @Test
+    void staysClosedBelowTheMinimumCalls() {
+        circuitBreaker.record(false);
+        circuitBreaker.record(false);
+        circuitBreaker.record(false);
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+
+    @Test
+    void opensOnceTheFailureRateReachesTheThreshold() {
+        circuitBreaker.record(true);
+        circuitBreaker.record(true);
+        circuitBreaker.record(false);
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        circuitBreaker.record(false);
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+
+    @Test
+    void forgetsOutcomesThatLeftTheWindow() {
+        circuitBreaker.record(false);
+        circuitBreaker.record(true);
+        circuitBreaker.record(true);
+        circuitBreaker.record(true);
+        circuitBreaker.record(true);
+        circuitBreaker.record(false);
+        circuitBreaker.record(true);
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+
+    @Test
+    void letsTheTrialCallsThroughOnceTheOpenDurationIsOver() {
+        open();
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+        circuitBreaker.releasePermission();
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+
+    @Test
+    void closesWhenAllTrialCallsSucceed() {
+        open();
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.tryAcquirePermission();
+
+        circuitBreaker.record(true);
+        circuitBreaker.record(true);
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        circuitBreaker.record(false);
+        circuitBreaker.record(false);
+        circuitBreaker.record(false);
+        assertThat(circuitBreaker.state()).as("starts over with an empty window")
+                .isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+
+    @Test
+    void opensAgainWhenATrialCallFails() {
+        open();
+        circuitBreaker.tryAcquirePermission();
+
+        circuitBreaker.record(false);
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+
+    @Test
+    void rejectsWhileOpen() {
+        final var breaker = new CircuitBreaker(settings(Map.of(
+                "resilience.circuit-breaker-window-size", "2",
+                "resilience.circuit-breaker-minimum-calls", "2",
+                "resilience.circuit-breaker-open-duration", "1m")));
+        breaker.record(false);
+        breaker.record(false);
+
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+
+    private void open() {
+        for (var i = 0; i < 4; i++) {
+            circuitBreaker.record(false);
+        }
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
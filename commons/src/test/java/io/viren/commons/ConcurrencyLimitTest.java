@@ -0,0 +1,160 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+
+    @Test
+    void rejectsBeyondTheLimit() {
+        final var limit = limit(Map.of("inbound.limit.initial-limit", "2"));
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.inFlight()).isEqualTo(2);
+        assertThat(limit.rejected()).isEqualTo(1);
+
+        limit.release(-1);
+
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+
+    @Test
+    void shrinksWhenRequestsGetSlower() {
+        final var limit = limit(Map.of("inbound.limit.initial-limit", "100", "inbound.limit.sample-window", "10"));
+        sample(limit, 100, Duration.ofMillis(10));
+        assertThat(limit.limit()).isGreaterThanOrEqualTo(100);
+
+        for (var i = 0; i < 20; i++) {
+            sample(limit, 100, Duration.ofMillis(100));
+        }
+
+        assertThat(limit.limit()).isLessThan(100).isGreaterThanOrEqualTo(20);
+    }
+
+
+    @Test
+    void growsOnlyWhileMostOfTheLimitIsInUse() {
+        final var limit = limit(Map.of("inbound.limit.initial-limit", "50", "inbound.limit.sample-window", "10"));
+        for (var i = 0; i < 20; i++) {
+            sample(limit, 5, Duration.ofMillis(10));
+        }
+        assertThat(limit.limit()).isEqualTo(50);
+
+        for (var i = 0; i < 20; i++) {
+            sample(limit, 50, Duration.ofMillis(10));
+        }
+
+        assertThat(limit.limit()).isGreaterThan(50).isLessThanOrEqualTo(1000);
+    }
+
+
+    @Test
+    void ignoresCancelledRequests() {
+        final var limit = limit(Map.of("inbound.limit.initial-limit", "10", "inbound.limit.sample-window", "1"));
+        for (var i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(-1);
+        }
+
+        assertThat(limit.limit()).isEqualTo(10);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+
+    @Test
+    void foldsIdsAndSkipsExcludedPaths() {
+        final var limits = new ConcurrencyLimits(new MockEnvironment(), meterRegistry);
+
+        assertThat(limits.limitOf("GET", PathContainer.parsePath("/customers/1")))
+                .containsSame(limits.limitOf("GET", PathContainer.parsePath("/customers/42")).orElseThrow());
+        assertThat(limits.limitOf("GET", PathContainer.parsePath("/actuator/health/readiness"))).isEmpty();
+        assertThat(limits.limits()).containsOnlyKeys("GET /customers/{id}");
+    }
+
+
+    @Test
+    void sharesOneLimitBeyondTheMaximumEndpoints() {
+        final var limits = new ConcurrencyLimits(new MockEnvironment()
+                .withProperty("inbound.limit.max-endpoints", "2"), meterRegistry);
+        for (var path : new String[]{"/a", "/b", "/c", "/d"}) {
+            limits.limitOf("GET", PathContainer.parsePath(path));
+        }
+
+        assertThat(limits.limits()).containsOnlyKeys("GET /a", "GET /b", "other");
+    }
+
+
+    @Test
+    void limitsNothingWhenDisabled() {
+        final var limits = new ConcurrencyLimits(new MockEnvironment()
+                .withProperty("inbound.limit.enabled", "false"), meterRegistry);
+
+        assertThat(limits.limitOf("GET", PathContainer.parsePath("/customers/1"))).isEmpty();
+    }
+
+
+    @Test
+    void reportsTheSheddingStatusWhileRejecting() throws InterruptedException {
+        final var limits = new ConcurrencyLimits(new MockEnvironment()
+                .withProperty("inbound.limit.initial-limit", "1")
+                .withProperty("inbound.limit.shedding-window", "200ms"), meterRegistry);
+        final var indicator = new ConcurrencyLimitHealthIndicator(limits);
+        final var limit = limits.limitOf("GET", PathContainer.parsePath("/customers/1")).orElseThrow();
+        limit.tryAcquire();
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+
+        limit.tryAcquire();
+
+        assertThat(indicator.health().getStatus()).isEqualTo(new Status("DEGRADED"));
+        Thread.sleep(300);
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+
+    @Test
+    void reportsTheConfiguredSheddingStatus() {
+        final var limits = new ConcurrencyLimits(new MockEnvironment()
+                .withProperty("inbound.limit.initial-limit", "1")
+                .withProperty("inbound.limit.shedding-status", "OUT_OF_SERVICE"), meterRegistry);
+        final var limit = limits.limitOf("GET", PathContainer.parsePath("/customers/1")).orElseThrow();
+        limit.tryAcquire();
+        limit.tryAcquire();
+
+        assertThat(new ConcurrencyLimitHealthIndicator(limits).health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    }
+
+
+    /**
+     * One sample window of requests, with as many in flight at once.
+     */
+    private static void sample(ConcurrencyLimit limit, int inFlight, Duration latency) {
+        for (var i = 0; i < inFlight; i++) {
+            limit.tryAcquire();
+        }
+        for (var i = 0; i < inFlight; i++) {
+            limit.release(latency.toNanos());
+        }
+    }
+
+
+    private ConcurrencyLimit limit(Map<String, String> properties) {
+        return new ConcurrencyLimit("GET /customers/{id}", new Binder(new MapConfigurationPropertySource(properties))
+                .bindOrCreate("inbound.limit", ConcurrencyLimitSettings.class), meterRegistry);
+    }
+}
@@ -0,0 +1,63 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class ConnectionAcquireMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    private final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+
+
+    @Test
+    void timesGettingAConnectionWaitIncluded() {
+        doReturn(Mono.delay(Duration.ofMillis(50)).thenReturn(mock(Connection.class)))
+                .when(connectionFactory).create();
+
+        Mono.from(proxied().create()).block();
+
+        final var timer = meterRegistry.get("r2dbc.pool.acquire").tag("name", "connectionFactory").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(MILLISECONDS)).isGreaterThanOrEqualTo(50);
+    }
+
+
+    @Test
+    void timesNothingButGettingAConnection() {
+        doReturn(mock(ConnectionFactoryMetadata.class)).when(connectionFactory).getMetadata();
+
+        proxied().getMetadata();
+
+        assertThat(meterRegistry.find("r2dbc.pool.acquire").timer()).isNull();
+    }
+
+
+    /**
+     * The meter registry only comes up after the connection factory was post-processed.
+     */
+    private ConnectionFactory proxied() {
+        beanFactory.registerSingleton("observationRegistry", ObservationRegistry.NOOP);
+        final var proxied = (ConnectionFactory) CommonsAutoConfiguration.R2dbcConfiguration
+                .connectionFactoryObservation(beanFactory.getBeanProvider(ObservationRegistry.class),
+                        beanFactory.getBeanProvider(MeterRegistry.class), new MockEnvironment())
+                .postProcessAfterInitialization(connectionFactory, "connectionFactory");
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        return proxied;
+    }
+}
@@ -0,0 +1,94 @@
+package io.viren.commons;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamClientsTest {
+
+    private final Set<SocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final List<String> protocols = new CopyOnWriteArrayList<>();
+    private final DisposableServer server = HttpServer.create()
+            .port(0)
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .handle((request, response) -> {
+                connections.add(request.remoteAddress());
+                // HTTP/2 streams reach the handler converted to HTTP/1.1 requests, flagged by their stream id
+                protocols.add(request.requestHeaders().contains("x-http2-stream-id") ? "h2c" : "http/1.1");
+                return response.sendString(Mono.just("ok"));
+            })
+            .bindNow();
+    private DownstreamClients downstreamClients;
+
+
+    @AfterEach
+    void tearDown() {
+        downstreamClients.destroy();
+        server.disposeNow();
+    }
+
+
+    @Test
+    void sharesOnePoolBetweenTheClientsOfATarget() {
+        downstreamClients = new DownstreamClients(new MockEnvironment()
+                .withProperty("http.client.orders.max-connections", "1"));
+        final var first = webClient("orders");
+        final var second = webClient("orders");
+
+        Flux.range(0, 6)
+                .flatMap(i -> (i % 2 == 0 ? first : second).get().uri("/").retrieve().bodyToMono(String.class))
+                .blockLast();
+
+        assertThat(connections).hasSize(1);
+    }
+
+
+    @Test
+    void givesEachTargetItsOwnPool() {
+        downstreamClients = new DownstreamClients(new MockEnvironment());
+
+        call(webClient("orders"));
+        call(webClient("tracking-service"));
+
+        assertThat(connections).hasSize(2);
+    }
+
+
+    @Test
+    void speaksHttp11UnlessToldToUseH2c() {
+        downstreamClients = new DownstreamClients(new MockEnvironment()
+                .withProperty("http.client.tracking-service.h2c", "true"));
+
+        call(webClient("orders"));
+        call(webClient("tracking-service"));
+
+        assertThat(protocols).containsExactly("http/1.1", "h2c");
+    }
+
+
+    private WebClient webClient(String target) {
+        return WebClient.builder()
+                .clientConnector(downstreamClients.connector(target))
+                .baseUrl("http://localhost:" + server.port())
+                .build();
+    }
+
+
+    private static void call(WebClient webClient) {
+        assertThat(webClient.get().uri("/").retrieve().bodyToMono(String.class).block()).isEqualTo("ok");
+    }
+}
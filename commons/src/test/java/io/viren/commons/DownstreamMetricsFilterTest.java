@@ -0,0 +1,84 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatusCode.valueOf;
+
+class DownstreamMetricsFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+
+    @Test
+    void timesEveryCallByUriTemplateAndOutcome() {
+        final var webClient = webClient(request -> Mono.just(ClientResponse.create(
+                request.url().getPath().endsWith("/2") ? NOT_FOUND : OK).build()));
+
+        call(webClient, 1).block();
+        call(webClient, 1).block();
+        call(webClient, 2).block();
+
+        assertThat(timerCount("SUCCESS", "200")).isEqualTo(2);
+        assertThat(timerCount("CLIENT_ERROR", "404")).isEqualTo(1);
+    }
+
+
+    @Test
+    void countsTimeoutsAndIoErrorsApart() {
+        StepVerifier.create(call(webClient(request -> Mono.error(new ResponseStatusException(valueOf(408)))), 1))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        StepVerifier.create(call(webClient(request -> Mono.error(new IOException("connection reset"))), 1))
+                .expectError(IOException.class)
+                .verify();
+
+        assertThat(timerCount("TIMEOUT", "408")).isEqualTo(1);
+        assertThat(timerCount("UNKNOWN", "IO_ERROR")).isEqualTo(1);
+    }
+
+
+    @Test
+    void timesCallsCancelledBeforeTheResponse() {
+        StepVerifier.create(call(webClient(request -> Mono.never()), 1))
+                .thenCancel()
+                .verify();
+
+        assertThat(timerCount("CANCELLED", "NONE")).isEqualTo(1);
+    }
+
+
+    private WebClient webClient(ExchangeFunction exchangeFunction) {
+        return WebClient.builder()
+                .exchangeFunction(exchangeFunction)
+                .filter(new DownstreamMetricsFilter(meterRegistry, "orders"))
+                .build();
+    }
+
+
+    private static Mono<?> call(WebClient webClient, int customerId) {
+        return webClient.get()
+                .uri("http://orders/customer-orders/{customer-id}", customerId)
+                .exchangeToMono(ClientResponse::releaseBody);
+    }
+
+
+    private long timerCount(String outcome, String status) {
+        return meterRegistry.get("downstream.requests")
+                .tags("target", "orders", "method", "GET", "uri", "http://orders/customer-orders/{customer-id}",
+                        "outcome", outcome, "status", status)
+                .timer()
+                .count();
+    }
+}
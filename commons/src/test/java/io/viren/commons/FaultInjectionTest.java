@@ -0,0 +1,147 @@
+package io.viren.commons;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpStatus.OK;
+
+class FaultInjectionTest {
+
+    private static final String FAIL_AT_ORDERS = "/customers/1?emulateFailure=yes&httpFailureCode=503"
+                                                 + "&customizeBehaviorTargetApp=orders";
+
+
+    @Test
+    void readsTheBehaviorFromTheQueryParamsAndCarriesItInTheHeader() {
+        final var behavior = CustomizeBehavior.of(MockServerHttpRequest.get("/customers/1?emulateDelay=yes"
+                + "&delayInMs=20&delayDistribution=uniform&customizeBehaviorTargetApp=orders").build()).orElseThrow();
+
+        assertThat(behavior).isEqualTo(new CustomizeBehavior(false, 500, 1.0, true, 20, DelayDistribution.UNIFORM,
+                "orders"));
+        assertThat(CustomizeBehavior.of(behavior.encode(), name -> null)).contains(behavior);
+    }
+
+
+    @Test
+    void asksForNothingWithoutParamsOrHeader() {
+        assertThat(CustomizeBehavior.of(null, Map.<String, String>of()::get)).isEmpty();
+    }
+
+
+    @Test
+    void turnsDownInvalidBehavior() {
+        assertThatThrownBy(() -> CustomizeBehavior.of(null, Map.of("emulateFailure", "yes",
+                "httpFailureCode", "abc")::get))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(400));
+        assertThatThrownBy(() -> CustomizeBehavior.of(null, Map.of("emulateDelay", "yes",
+                "delayDistribution", "gaussian")::get))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+
+    @Test
+    void failsTheRequestAtTheTargetApp() {
+        final var chain = new RecordingChain();
+
+        StepVerifier.create(new FaultInjectionFilter("orders", false).filter(exchange(FAIL_AT_ORDERS), chain))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(503)))
+                .verify();
+        assertThat(chain.context).hasValue(null);
+    }
+
+
+    @Test
+    void carriesTheBehaviorOfAnotherAppWithoutApplyingIt() {
+        final var chain = new RecordingChain();
+
+        StepVerifier.create(new FaultInjectionFilter("customers", false).filter(exchange(FAIL_AT_ORDERS), chain))
+                .verifyComplete();
+        assertThat(chain.context.get().<CustomizeBehavior>get(CustomizeBehavior.class).targetApp()).isEqualTo("orders");
+    }
+
+
+    @Test
+    void appliesEveryBehaviorAtTheLastHop() {
+        StepVerifier.create(new FaultInjectionFilter("tracking-service", true).filter(exchange(FAIL_AT_ORDERS),
+                        new RecordingChain()))
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+
+    @Test
+    void delaysTheRequestAtTheTargetApp() {
+        final var chain = new RecordingChain();
+
+        StepVerifier.withVirtualTime(() -> new FaultInjectionFilter("orders", false).filter(
+                        exchange("/customers/1?emulateDelay=yes&delayInMs=200&customizeBehaviorTargetApp=orders"),
+                        chain))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(199))
+                .thenAwait(Duration.ofMillis(1))
+                .verifyComplete();
+        assertThat(chain.context.get()).isNotNull();
+    }
+
+
+    @Test
+    void forwardsTheBehaviorInTheContextDownstream() {
+        final var behavior = new CustomizeBehavior(true, 503, 0.5, false, 0, DelayDistribution.FIXED, "tracking");
+        final var sent = new AtomicReference<ClientRequest>();
+
+        StepVerifier.create(new FaultInjectionPropagation()
+                        .filter(ClientRequest.create(GET, URI.create("http://orders/customer-orders/1")).build(),
+                                request -> {
+                                    sent.set(request);
+                                    return Mono.just(ClientResponse.create(OK).build());
+                                })
+                        .contextWrite(Context.of(CustomizeBehavior.class, behavior)))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(CustomizeBehavior.of(sent.get().headers().getFirst(CustomizeBehavior.HEADER), name -> null))
+                .contains(behavior);
+    }
+
+
+    private static MockServerWebExchange exchange(String uri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+    }
+
+
+    /**
+     * Records the Reactor context the rest of the chain ran with, none when it was not called.
+     */
+    private static class RecordingChain implements WebFilterChain {
+
+        private final AtomicReference<ContextView> context = new AtomicReference<>();
+
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange) {
+            return Mono.deferContextual(contextView -> {
+                context.set(contextView);
+                return Mono.empty();
+            });
+        }
+    }
+}
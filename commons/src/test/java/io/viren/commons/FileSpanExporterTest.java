@@ -0,0 +1,56 @@
+package io.viren.commons;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSpanExporterTest {
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void appendsEveryFinishedSpanAsAJsonLine() throws IOException {
+        final var file = directory.resolve("spans.jsonl");
+        final var tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new FileSpanExporter(file)))
+                .build();
+        final var tracer = tracerProvider.get("test");
+
+        final var parent = tracer.spanBuilder("parent").startSpan();
+        final var child = tracer.spanBuilder("child").setParent(Context.current().with(parent))
+                .setAttribute("db.statement", "select 1").startSpan();
+        child.end();
+        parent.end();
+        tracerProvider.shutdown().join(1, SECONDS);
+
+        final var objectMapper = new ObjectMapper();
+        final var lines = Files.readAllLines(file).stream()
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, Map.class);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+        assertThat(lines).extracting(line -> line.get("name")).containsExactly("child", "parent");
+        assertThat(lines).extracting(line -> line.get("traceId")).containsOnly(parent.getSpanContext().getTraceId());
+        assertThat(lines.get(0).get("parentSpanId")).isEqualTo(parent.getSpanContext().getSpanId());
+        assertThat(lines.get(0).get("attributes")).isEqualTo(Map.of("db.statement", "select 1"));
+        assertThat(lines.get(0)).containsKeys("spanId", "service", "kind", "startEpochNanos", "durationMicros",
+                "status");
+    }
+}
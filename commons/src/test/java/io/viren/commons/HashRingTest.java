@@ -0,0 +1,76 @@
+package io.viren.commons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTest {
+
+    private static final int CUSTOMERS = 100_000;
+
+
+    @Test
+    void ownsEveryCustomerTheSameWayForTheSameShardCount() {
+        final var ring = new HashRing(4, 128);
+        final var other = new HashRing(4, 128);
+
+        assertThat(IntStream.range(0, CUSTOMERS)
+                .filter(customerId -> ring.shardOf(customerId) != other.shardOf(customerId)))
+                .isEmpty();
+    }
+
+
+    @Test
+    void spreadsTheCustomersEvenly() {
+        final var ring = new HashRing(4, 128);
+
+        final Map<Integer, Long> owned = IntStream.range(0, CUSTOMERS)
+                .mapToObj(ring::shardOf)
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+
+        assertThat(owned).containsOnlyKeys(0, 1, 2, 3);
+        assertThat(owned.values()).allSatisfy(count -> assertThat(count)
+                .isBetween((long) (0.8 * CUSTOMERS / 4), (long) (1.2 * CUSTOMERS / 4)));
+    }
+
+
+    @Test
+    void spreadsTheFirstCustomersOverEveryShard() {
+        final var ring = new HashRing(4, 128);
+
+        assertThat(IntStream.rangeClosed(1, 128).map(ring::shardOf).distinct().sorted()).containsExactly(0, 1, 2, 3);
+    }
+
+
+    @Test
+    void movesAboutOneInNCustomersAndOnlyToTheAddedShard() {
+        final var before = new HashRing(4, 128);
+        final var after = new HashRing(5, 128);
+
+        final var moved = IntStream.range(0, CUSTOMERS)
+                .filter(customerId -> before.shardOf(customerId) != after.shardOf(customerId))
+                .boxed()
+                .toList();
+
+        assertThat(moved.size()).isBetween((int) (0.8 * CUSTOMERS / 5), (int) (1.2 * CUSTOMERS / 5));
+        assertThat(moved).allSatisfy(customerId -> assertThat(after.shardOf(customerId)).isEqualTo(4));
+    }
+
+
+    @Test
+    void movesOnlyTheCustomersOfARemovedShard() {
+        final var before = new HashRing(4, 128);
+        final var after = new HashRing(3, 128);
+
+        assertThat(IntStream.range(0, CUSTOMERS)
+                .filter(customerId -> before.shardOf(customerId) != after.shardOf(customerId))
+                .mapToObj(before::shardOf)
+                .distinct())
+                .containsExactly(3);
+    }
+}
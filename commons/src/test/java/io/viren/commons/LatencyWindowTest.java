@@ -0,0 +1,52 @@
+package io.viren.commons;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyWindowTest {
+
+    @Test
+    void hasNoPercentileBelowTheMinimumSamples() {
+        final var window = new LatencyWindow(10, 3);
+        window.record(millis(1));
+        window.record(millis(2));
+
+        assertThat(window.percentile(0.5)).isEmpty();
+    }
+
+
+    @Test
+    void picksThePercentileOfTheRecordedLatencies() {
+        final var window = new LatencyWindow(100, 10);
+        for (var i = 100; i >= 1; i--) {
+            window.record(millis(i));
+        }
+
+        assertThat(window.percentile(0.5)).contains(Duration.ofMillis(51));
+        assertThat(window.percentile(0.99)).contains(Duration.ofMillis(100));
+        assertThat(window.percentile(1.0)).contains(Duration.ofMillis(100));
+        assertThat(window.percentile(0.0)).contains(Duration.ofMillis(1));
+    }
+
+
+    @Test
+    void keepsOnlyTheLastLatencies() {
+        final var window = new LatencyWindow(4, 1);
+        for (var i = 0; i < 4; i++) {
+            window.record(millis(1_000));
+        }
+        for (var i = 0; i < 4; i++) {
+            window.record(millis(10));
+        }
+
+        assertThat(window.percentile(1.0)).contains(Duration.ofMillis(10));
+    }
+
+
+    private static long millis(long millis) {
+        return Duration.ofMillis(millis).toNanos();
+    }
+}
@@ -0,0 +1,66 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueryMetrics queryMetrics = new QueryMetrics(meterRegistry);
+
+
+    @Test
+    void timesAQueryFromSubscriptionToCompletion() {
+        final var query = queryMetrics.time("OrderRepository.findAll",
+                Flux.just(1, 2).delayElements(Duration.ofMillis(20)));
+
+        assertThat(meterRegistry.find("repository.queries").timer()).as("not timed before subscription").isNull();
+        StepVerifier.create(query).expectNext(1, 2).verifyComplete();
+
+        final var timer = meterRegistry.get("repository.queries")
+                .tags("query", "OrderRepository.findAll", "outcome", "SUCCESS")
+                .timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(MILLISECONDS)).isGreaterThanOrEqualTo(40);
+    }
+
+
+    @Test
+    void tagsFailedAndCancelledQueries() {
+        StepVerifier.create(queryMetrics.time("OrderRepository.findById", Mono.error(new IllegalStateException())))
+                .expectError()
+                .verify();
+        StepVerifier.create(queryMetrics.time("OrderRepository.findById", Mono.never()))
+                .thenCancel()
+                .verify();
+
+        assertThat(count("OrderRepository.findById", "ERROR")).isEqualTo(1);
+        assertThat(count("OrderRepository.findById", "CANCELLED")).isEqualTo(1);
+    }
+
+
+    @Test
+    void timesBlockingQueries() {
+        assertThat(queryMetrics.time("JdbcTemplate.query", () -> 42)).isEqualTo(42);
+        assertThatThrownBy(() -> queryMetrics.time("JdbcTemplate.query", () -> {
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(count("JdbcTemplate.query", "SUCCESS")).isEqualTo(1);
+        assertThat(count("JdbcTemplate.query", "ERROR")).isEqualTo(1);
+    }
+
+
+    private long count(String query, String outcome) {
+        return meterRegistry.get("repository.queries").tags("query", query, "outcome", outcome).timer().count();
+    }
+}
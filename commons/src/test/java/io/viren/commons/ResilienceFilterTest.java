@@ -0,0 +1,200 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static io.viren.commons.CircuitBreakerTest.settings;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResilienceFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger exchanges = new AtomicInteger();
+
+
+    @Test
+    void retriesAGetUntilItSucceeds() {
+        final var filter = filter(Map.of());
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> attempt < 3 ? status(503) : status(200))))
+                .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(200))
+                .verifyComplete();
+        assertThat(exchanges).hasValue(3);
+        assertThat(meterRegistry.counter("downstream.retries", "target", "orders", "instance", "orders").count())
+                .isEqualTo(2);
+    }
+
+
+    @Test
+    void handsOverTheLastFailureOnceTheRetriesAreExhausted() {
+        final var filter = filter(Map.of());
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(500))))
+                .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(500))
+                .verifyComplete();
+        assertThat(exchanges).hasValue(3);
+    }
+
+
+    @Test
+    void doesNotRetryWhenShedWithRetryAfter() {
+        final var filter = filter(Map.of());
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> Mono.just(ClientResponse.create(
+                        HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build()))))
+                .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(503))
+                .verifyComplete();
+        assertThat(exchanges).hasValue(1);
+    }
+
+
+    @Test
+    void retriesOnlyIdempotentCalls() {
+        final var filter = filter(Map.of());
+        final var post = ClientRequest.create(HttpMethod.POST, URI.create("http://orders/orders")).build();
+        final var idempotentPost = ClientRequest.from(post).attribute(ResilienceFilter.IDEMPOTENT, true).build();
+
+        StepVerifier.create(filter.filter(post, respond(attempt -> status(503))))
+                .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(503))
+                .verifyComplete();
+        assertThat(exchanges).hasValue(1);
+
+        exchanges.set(0);
+        StepVerifier.create(filter.filter(idempotentPost, respond(attempt -> status(503))))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(exchanges).hasValue(3);
+    }
+
+
+    @Test
+    void timesOutSlowAttempts() {
+        final var filter = filter(Map.of("resilience.max-retries", "0", "resilience.max-timeout", "100ms"));
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(200).delayElement(Duration.ofSeconds(1)))))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(408)))
+                .verify(Duration.ofSeconds(1));
+    }
+
+
+    @Test
+    void hedgesACallSlowerThanTheHedgePercentile() {
+        final var filter = filter(Map.of("resilience.latency-minimum-samples", "5", "resilience.min-timeout", "5s"));
+        for (var i = 0; i < 5; i++) {
+            filter.filter(get(), respond(attempt -> status(200))).block();
+        }
+        exchanges.set(0);
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> attempt == 1
+                        ? status(200).delayElement(Duration.ofSeconds(10))
+                        : status(200))))
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+        assertThat(exchanges).hasValue(2);
+        assertThat(meterRegistry.counter("downstream.hedges", "target", "orders", "instance", "orders").count())
+                .isEqualTo(1);
+    }
+
+
+    @Test
+    void failsFastOnceTheCircuitIsOpen() {
+        final var filter = filter(Map.of("resilience.max-retries", "0",
+                "resilience.circuit-breaker-minimum-calls", "2", "resilience.circuit-breaker-open-duration", "1m"));
+        for (var i = 0; i < 2; i++) {
+            filter.filter(get(), respond(attempt -> status(500))).block();
+        }
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(200))))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(503)))
+                .verify();
+        assertThat(exchanges).hasValue(2);
+    }
+
+
+    @Test
+    void rejectsOnceTheBulkheadIsFull() {
+        final var filter = filter(Map.of("resilience.max-concurrent-calls", "1"));
+        final var pending = filter.filter(get(), respond(attempt -> Mono.never())).subscribe();
+
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(200))))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(503)))
+                .verify();
+
+        pending.dispose();
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(200))))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void sendsFaultInjectionCallsOnceAndLeavesTheBreakerAlone() {
+        final var filter = filter(Map.of("resilience.circuit-breaker-minimum-calls", "2",
+                "resilience.max-timeout", "100ms"));
+        final var behavior = new CustomizeBehavior(true, 500, 1.0, true, 200, DelayDistribution.FIXED, "tracking");
+        final var delay = Duration.ofMillis(behavior.delayInMs());
+
+        for (var i = 0; i < 3; i++) {
+            StepVerifier.create(filter.filter(get(), respond(attempt -> status(500).delayElement(delay)))
+                            .contextWrite(Context.of(CustomizeBehavior.class, behavior)))
+                    .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(500))
+                    .verifyComplete();
+        }
+        assertThat(exchanges).as("neither retried nor hedged").hasValue(3);
+
+        final var withHeader = ClientRequest.from(get()).header(CustomizeBehavior.HEADER, behavior.encode()).build();
+        StepVerifier.create(filter.filter(withHeader, respond(attempt -> status(500))))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(exchanges).hasValue(4);
+
+        exchanges.set(0);
+        StepVerifier.create(filter.filter(get(), respond(attempt -> status(200))))
+                .assertNext(response -> assertThat(response.statusCode().value()).isEqualTo(200))
+                .verifyComplete();
+        assertThat(exchanges).as("the circuit stayed closed").hasValue(1);
+    }
+
+
+    private ResilienceFilter filter(Map<String, String> properties) {
+        final Map<String, String> resilience = new HashMap<>(Map.of("resilience.retry-backoff", "1ms"));
+        resilience.putAll(properties);
+        return new ResilienceFilter("orders", "orders", settings(resilience), meterRegistry);
+    }
+
+
+    private ExchangeFunction respond(IntFunction<Mono<ClientResponse>> responses) {
+        return request -> Mono.defer(() -> responses.apply(exchanges.incrementAndGet()));
+    }
+
+
+    private static ClientRequest get() {
+        return ClientRequest.create(HttpMethod.GET, URI.create("http://orders/orders/1")).build();
+    }
+
+
+    private static Mono<ClientResponse> status(int status) {
+        return Mono.just(ClientResponse.create(HttpStatus.valueOf(status)).build());
+    }
+}
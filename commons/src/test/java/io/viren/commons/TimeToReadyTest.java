@@ -0,0 +1,37 @@
+package io.viren.commons;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeToReadyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+
+    @Test
+    void publishesTheTimeFromJvmStartUntilReady() throws InterruptedException {
+        final var context = new StaticApplicationContext();
+        context.refresh();
+
+        new TimeToReady(meterRegistry, false).onApplicationEvent(new ApplicationReadyEvent(new SpringApplication(),
+                new String[0], context, Duration.ofMillis(250)));
+
+        final var timeToReady = meterRegistry.get("application.time.to.ready").timeGauge().value(MILLISECONDS);
+        assertThat(timeToReady).isPositive()
+                .isLessThanOrEqualTo(ManagementFactory.getRuntimeMXBean().getUptime());
+        Thread.sleep(20);
+        assertThat(meterRegistry.get("application.time.to.ready").timeGauge().value(MILLISECONDS))
+                .as("fixed once ready, not the uptime").isEqualTo(timeToReady);
+        assertThat(context.isActive()).as("still running without startup.exit-when-ready").isTrue();
+        context.close();
+    }
+}
@@ -0,0 +1,110 @@
+package io.viren.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlockingCustomerControllerTest {
+
+    private static final byte[] ORDERS = "[{\"orderId\":1,\"productName\":\"250g Tata Tea\"}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+    private final BlockingOrderService orderService = mock(BlockingOrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CustomerResponseCache customerResponseCache = new CustomerResponseCache(meterRegistry, 1 << 20);
+    private final BlockingCustomerController controller = new BlockingCustomerController(jdbcTemplate, orderService,
+            new QueryMetrics(meterRegistry), customerResponseCache, new ObjectMapper());
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Arrays.stream(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .forEach(jdbcTemplate::execute);
+        jdbcTemplate.update("insert into Customer (name) values ('Aakash'), ('Bhavna'), ('Chetan')");
+    }
+
+
+    @Test
+    void pagesThroughTheCustomersAfterTheGivenId() {
+        assertThat(controller.getCustomers(1, 100)).extracting(Customer::name).containsExactly("Bhavna", "Chetan");
+        assertThat(controller.getCustomers(0, 1)).extracting(Customer::name).containsExactly("Aakash");
+    }
+
+
+    @Test
+    void turnsDownPageSizesOutOfRange() {
+        assertThatThrownBy(() -> controller.getCustomers(0, 0)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid page size.");
+        assertThatThrownBy(() -> controller.getCustomers(0, 1_001)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid page size.");
+    }
+
+
+    @Test
+    void turnsDownUnknownCustomersWithoutAskingOrders() {
+        assertThatThrownBy(() -> controller.getCustomerById(42)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid customer id.");
+        verify(orderService, never()).getCustomerOrders(anyInt(), any());
+    }
+
+
+    @Test
+    void cachesTheResponseBehindTheEtagOfOrders() {
+        when(orderService.getCustomerOrders(1, null)).thenReturn(new OrdersSnapshot("\"v1\"", ORDERS));
+
+        final var response = controller.getCustomerById(1);
+
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                .isEqualTo("{\"customer\":{\"id\":1,\"name\":\"Aakash\"},\"orders\":" + new String(ORDERS,
+                        StandardCharsets.UTF_8) + "}");
+        assertThat(customerResponseCache.get(1).ordersEtag()).isEqualTo("\"v1\"");
+    }
+
+
+    @Test
+    void servesTheCachedResponseWhileOrdersDidNotChange() {
+        final var cached = customerResponseCache.put(1, "\"v1\"", "cached".getBytes(StandardCharsets.UTF_8));
+        when(orderService.getCustomerOrders(1, "\"v1\"")).thenReturn(new OrdersSnapshot("\"v1\"", null));
+        jdbcTemplate.update("delete from Customer");
+
+        final var response = controller.getCustomerById(1);
+
+        assertThat(response.getBody()).isSameAs(cached.body());
+        assertThat(response.getHeaders().getETag()).isEqualTo(cached.etag());
+    }
+
+
+    @Test
+    void rebuildsTheResponseOnceOrdersChanged() {
+        customerResponseCache.put(1, "\"v1\"", "cached".getBytes(StandardCharsets.UTF_8));
+        when(orderService.getCustomerOrders(1, "\"v1\"")).thenReturn(new OrdersSnapshot("\"v2\"", ORDERS));
+
+        final var response = controller.getCustomerById(1);
+
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).contains("\"orders\":[{\"orderId\":1");
+        assertThat(customerResponseCache.get(1).ordersEtag()).isEqualTo("\"v2\"");
+    }
+}
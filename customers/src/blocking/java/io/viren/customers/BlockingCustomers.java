@@ -0,0 +1,198 @@
+package io.viren.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.viren.commons.BlockingDownstreamClients;
+import io.viren.commons.BlockingFaultInjectionFilter;
+import io.viren.commons.QueryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.DataClassRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+import static org.springframework.http.HttpStatusCode.valueOf;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * The {@code blocking} build: the request/response endpoints of {@link CustomerController} on Spring MVC, one
+ * thread per request, JDBC instead of R2DBC against the same database and {@link RestTemplate} towards orders.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingConfiguration {
+
+    /**
+     * Spring Boot backs off its own as soon as there is an R2DBC connection factory.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource dataSource(@Value("${spring.datasource.url}") String url,
+                                @Value("${spring.datasource.username:sa}") String username) {
+        return DataSourceBuilder.create().type(HikariDataSource.class).url(url).username(username).build();
+    }
+}
+
+
+@RestController
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingCustomerController {
+
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private final Logger log = LoggerFactory.getLogger(BlockingCustomerController.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingOrderService orderService;
+    private final QueryMetrics queryMetrics;
+    private final CustomerResponseCache customerResponseCache;
+    private final ObjectMapper objectMapper;
+
+
+    BlockingCustomerController(JdbcTemplate jdbcTemplate, BlockingOrderService orderService,
+                               QueryMetrics queryMetrics, CustomerResponseCache customerResponseCache,
+                               ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderService = orderService;
+        this.queryMetrics = queryMetrics;
+        this.customerResponseCache = customerResponseCache;
+        this.objectMapper = objectMapper;
+    }
+
+
+    @GetMapping("/customers")
+    List<Customer> getCustomers(@RequestParam(defaultValue = "0") int after,
+                                @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(valueOf(400), "Supply valid page size.");
+        }
+        return queryMetrics.time("CustomerRepository.findPage", () -> jdbcTemplate.query(
+                "select * from Customer where id > ? order by id limit ?",
+                new DataClassRowMapper<>(Customer.class), after, size));
+    }
+
+
+    /**
+     * Plain {@code /error} stays with the error page of Spring MVC.
+     */
+    @PostMapping("/error/{http-code}")
+    void createFailure(@PathVariable("http-code") int httpCode) {
+        throw new ResponseStatusException(valueOf(httpCode));
+    }
+
+
+    /**
+     * Same caching and revalidation as {@link CustomerController#getCustomerById(int)}.
+     */
+    @GetMapping(value = "/customers/{customer-id}", produces = APPLICATION_JSON_VALUE)
+    ResponseEntity<byte[]> getCustomerById(@PathVariable("customer-id") int customerId) {
+        try {
+            final var cached = BlockingFaultInjectionFilter.current().isPresent()
+                    ? null
+                    : customerResponseCache.get(customerId);
+            final var customer = null == cached ? findCustomer(customerId) : null;
+            final var snapshot = orderService.getCustomerOrders(customerId,
+                    null == cached ? null : cached.ordersEtag());
+            final CustomerResponseCache.CachedResponse response;
+            if (null == snapshot.orders() && null != cached) {
+                response = cached;
+            } else {
+                response = customerResponseCache.put(customerId, snapshot.etag(), CustomerController.envelope(
+                        objectMapper, null == customer ? findCustomer(customerId) : customer, snapshot.orders()));
+            }
+            return ResponseEntity.ok()
+                    .eTag(response.etag())
+                    .contentType(APPLICATION_JSON)
+                    .body(response.body());
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+            throw e;
+        }
+    }
+
+
+    private Customer findCustomer(int customerId) {
+        return queryMetrics.time("CustomerRepository.findById", () -> jdbcTemplate.query(
+                        "select * from Customer where id = ?", new DataClassRowMapper<>(Customer.class), customerId))
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(valueOf(400), "Supply valid customer id."));
+    }
+}
+
+
+@Service
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingOrderService {
+
+    private static final byte[] EMPTY_ORDERS = "[]".getBytes(StandardCharsets.UTF_8);
+    private final RestTemplate restTemplate;
+    private final OrderShards orderShards;
+
+
+    BlockingOrderService(BlockingDownstreamClients downstreamClients, OrderShards orderShards,
+                         @Value("${orders.service.base-path}") String serviceBasePath) {
+        restTemplate = downstreamClients.restTemplate("orders", serviceBasePath);
+        this.orderShards = orderShards;
+    }
+
+
+    /**
+     * Conditional GET of the orders of a customer, see {@link OrderService#getCustomerOrders(int, String)}.
+     */
+    OrdersSnapshot getCustomerOrders(int customerId, String etag) {
+        final var owners = orderShards.owners(customerId);
+        if (1 == owners.size()) {
+            return getCustomerOrders(owners.get(0), customerId, etag);
+        }
+        return OrdersSnapshot.merged(owners.stream()
+                .map(owner -> getCustomerOrders(owner, customerId, null))
+                .toList());
+    }
+
+
+    private OrdersSnapshot getCustomerOrders(String shard, int customerId, String etag) {
+        final var headers = new HttpHeaders();
+        headers.setAccept(List.of(APPLICATION_JSON));
+        if (null != etag) {
+            headers.setIfNoneMatch(etag);
+        }
+        if (orderShards.isDown(shard)) {
+            throw new ResponseStatusException(valueOf(503), "orders shard " + shard + " is down");
+        }
+        try {
+            final var response = restTemplate.exchange(shard + "/customer-orders/{customer-id}", HttpMethod.GET,
+                    new HttpEntity<>(headers), byte[].class, customerId);
+            if (response.getStatusCode().value() == 304) {
+                return new OrdersSnapshot(etag, null);
+            }
+            return new OrdersSnapshot(response.getHeaders().getETag(),
+                    requireNonNullElse(response.getBody(), EMPTY_ORDERS));
+        } catch (HttpStatusCodeException e) {
+            throw new ResponseStatusException(e.getStatusCode(), e.getResponseBodyAsString());
+        }
+    }
+}
\ No newline at end of file
@@ -3,55 +3,95 @@ package io.viren.customers;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import io.netty.channel.ConnectTimeoutException;
-import io.netty.handler.timeout.ReadTimeoutHandler;
-import io.netty.handler.timeout.TimeoutException;
-import io.netty.handler.timeout.WriteTimeoutHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.viren.commons.CustomizeBehavior;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.DownstreamMetricsFilter;
+import io.viren.commons.FaultInjectionPropagation;
+import io.viren.commons.HashRing;
+import io.viren.commons.QueryMetrics;
+import io.viren.commons.ResilienceFilters;
+import io.viren.commons.TimeoutFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.http.HttpStatusCode;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.reactive.function.client.ClientRequest;
-import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
-import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.server.ResponseStatusException;
-import org.springframework.web.util.UriBuilder;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
-import static io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
 import static org.springframework.http.HttpStatusCode.valueOf;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 import static reactor.core.publisher.Mono.error;
 
+/**
+ * Types that Jackson or the {@link Binder} reflect on outside of controller signatures, registered for AOT
+ * processing and native images.
+ */
 @SpringBootApplication
+@RegisterReflectionForBinding({Customer.class, CustomerResponseDto.class, CustomerStreamEvent.class,
+        CustomerOrderView.class, Tracking.class, OrderShardSettings.class})
 public class CustomersApplication {
 
     public static void main(String[] args) {
@@ -76,22 +116,40 @@ record Customer(@Id Integer id, String name) {
 
 
 @RestController
+@ConditionalOnWebApplication(type = REACTIVE)
 class CustomerController {
     private final CustomerRepository customerRepository;
     private final OrderService orderService;
+    private final QueryMetrics queryMetrics;
+    private final CustomerResponseCache customerResponseCache;
+    private final ObjectMapper objectMapper;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final byte[] CUSTOMER_FIELD = "{\"customer\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ORDERS_FIELD = ",\"orders\":".getBytes(StandardCharsets.UTF_8);
 
     private final Logger log = LoggerFactory.getLogger(CustomerController.class);
 
 
-    CustomerController(CustomerRepository customerRepository, OrderService orderService) {
+    CustomerController(CustomerRepository customerRepository, OrderService orderService, QueryMetrics queryMetrics,
+                       CustomerResponseCache customerResponseCache, ObjectMapper objectMapper) {
         this.customerRepository = customerRepository;
         this.orderService = orderService;
+        this.queryMetrics = queryMetrics;
+        this.customerResponseCache = customerResponseCache;
+        this.objectMapper = objectMapper;
     }
 
 
+    /**
+     * Keyset pagination: pass the last id of the previous page as {@code after} to get the next one.
+     */
     @GetMapping("/customers")
-    Flux<Customer> getCustomers() {
-        return this.customerRepository.findAll();
+    Flux<Customer> getCustomers(@RequestParam(defaultValue = "0") int after,
+                                @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Flux.error(new ResponseStatusException(valueOf(400), "Supply valid page size."));
+        }
+        return queryMetrics.time("CustomerRepository.findPage", this.customerRepository.findPage(after, size));
     }
 
 
@@ -103,55 +161,155 @@ class CustomerController {
     }
 
 
-    @GetMapping("/customers/{customer-id}")
-    Mono<CustomerResponseDto> getCustomerById(@PathVariable("customer-id") int customerId,
-                                              @RequestParam(defaultValue = "tracking")
-                                              String customizeBehaviorTargetApp,
-                                              @RequestParam(value = "emulateFailure", defaultValue = "no") String signal
-            , @RequestParam(value = "httpFailureCode", defaultValue = "500") String failureCode,
-                                              @RequestParam(value = "emulateDelay", defaultValue = "no")
-                                              String delaySignal,
-                                              @RequestParam(value = "delayInMs", defaultValue = "0") String delayInMs) {
-        if (!customizeBehaviorTargetApp.equalsIgnoreCase("customers")) {
-            return getCustomer(new CustomizeBehavior(signal, failureCode, delaySignal, delayInMs,
-                    customizeBehaviorTargetApp)).apply(customerId);
+    /**
+     * The serialized response is kept in {@link CustomerResponseCache} along with the ETag orders gave for its
+     * orders. A repeat call then only costs a conditional GET to orders, and a 304 to callers sending the ETag.
+     * Requests asking for emulated behavior bypass the cache. Unknown customers are turned down before orders is
+     * asked, a cached response vouching for its customer.
+     */
+    @GetMapping(value = "/customers/{customer-id}", produces = APPLICATION_JSON_VALUE)
+    Mono<ResponseEntity<byte[]>> getCustomerById(@PathVariable("customer-id") int customerId) {
+        return Mono.deferContextual(context -> {
+                    final var cached = context.hasKey(CustomizeBehavior.class)
+                            ? null
+                            : customerResponseCache.get(customerId);
+                    if (null == cached) {
+                        return findCustomer(customerId).flatMap(customer -> this.orderService
+                                .getCustomerOrders(customerId, null)
+                                .map(snapshot -> customerResponseCache.put(customerId, snapshot.etag(),
+                                        envelope(objectMapper, customer, snapshot.orders()))));
+                    }
+                    return this.orderService.getCustomerOrders(customerId, cached.ordersEtag())
+                            .flatMap(snapshot -> null == snapshot.orders()
+                                    ? Mono.just(cached)
+                                    : findCustomer(customerId).map(customer -> customerResponseCache.put(customerId,
+                                            snapshot.etag(), envelope(objectMapper, customer, snapshot.orders()))));
+                })
+                .doOnError(error -> log.error(error.getMessage(), error))
+                .map(response -> ResponseEntity.ok()
+                        .eTag(response.etag())
+                        .contentType(APPLICATION_JSON)
+                        .body(response.body()));
+    }
 
-        }
-        final var customerOutMono = Mono.just(delaySignal)
-                .filter(ds -> ds.equalsIgnoreCase("YES"))
-                .flatMap(i -> Mono.delay(Duration.ofMillis(Integer.parseInt(delayInMs)))
-                        .then(getCustomer(null).apply(customerId)))
-                .switchIfEmpty(Mono.defer(() -> getCustomer(null).apply(customerId)));
 
-        return Mono.just(signal)
-                .filter(failureSignal -> failureSignal.equalsIgnoreCase("YES"))
-                .flatMap(s -> Mono.error(new ResponseStatusException(valueOf(Integer.parseInt(failureCode)),
-                        "failed on purpose at customers app")))
-                .defaultIfEmpty("neglected")
-                .flatMap(s -> Mono.defer(() -> customerOutMono));
+    /**
+     * The customer line followed by the order lines of orders, passed through as received.
+     */
+    @GetMapping(value = "/customers/{customer-id}", produces = APPLICATION_NDJSON_VALUE)
+    Flux<DataBuffer> streamCustomerById(@PathVariable("customer-id") int customerId, ServerHttpResponse response) {
+        return Flux.defer(() -> queryMetrics.time("CustomerRepository.findById",
+                        this.customerRepository.findById(customerId))
+                .switchIfEmpty(error(new ResponseStatusException(valueOf(400), "Supply valid customer id.")))
+                .flatMapMany(customer -> {
+                    final byte[] line;
+                    try {
+                        final var json = objectMapper.writeValueAsBytes(customer);
+                        line = Arrays.copyOf(json, json.length + 1);
+                        line[json.length] = '\n';
+                    } catch (JsonProcessingException e) {
+                        return error(new ResponseStatusException(valueOf(500), "Failed to serialize customer.", e));
+                    }
+                    return Flux.concat(Mono.just(response.bufferFactory().wrap(line)),
+                            this.orderService.streamCustomerOrderLines(customerId));
+                })
+                .doOnError(error -> log.error(error.getMessage(), error)));
+    }
+
 
+    @GetMapping(value = "/customers/{customer-id}", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<Object>> streamCustomerEventsById(@PathVariable("customer-id") int customerId) {
+        return streamCustomer().apply(customerId)
+                .map(event -> event.customer() != null
+                        ? ServerSentEvent.builder((Object) event.customer()).event("customer").build()
+                        : ServerSentEvent.builder((Object) event.order()).event("order").build());
     }
 
 
-    private Function<Integer, Mono<CustomerResponseDto>> getCustomer(CustomizeBehavior customizeBehavior) {
-        return customerId -> Mono.defer(() -> this.customerRepository.findById(customerId)
+    private Function<Integer, Flux<CustomerStreamEvent>> streamCustomer() {
+        return customerId -> Flux.defer(() -> queryMetrics.time("CustomerRepository.findById",
+                        this.customerRepository.findById(customerId))
                 .switchIfEmpty(error(new ResponseStatusException(valueOf(400), "Supply valid customer id.")))
-                .flatMap(customer -> this.orderService.getCustomerOrders(customerId, customizeBehavior)
-                        .collectList()
-                        .map(orders -> new CustomerResponseDto(customer, orders))
-                        .doOnError(error -> log.error(error.getMessage(), error))));
+                .flatMapMany(customer -> Flux.concat(Mono.just(new CustomerStreamEvent(customer, null)),
+                        this.orderService.streamCustomerOrders(customerId)
+                                .map(order -> new CustomerStreamEvent(null, order))))
+                .doOnError(error -> log.error(error.getMessage(), error)));
+    }
+
+
+    private Mono<Customer> findCustomer(int customerId) {
+        return queryMetrics.time("CustomerRepository.findById", this.customerRepository.findById(customerId))
+                .switchIfEmpty(error(new ResponseStatusException(valueOf(400), "Supply valid customer id.")));
+    }
+
+
+    /**
+     * Writes the JSON of {@link CustomerResponseDto} with the orders copied over as orders sent them, sparing a
+     * Jackson decode and encode of every order.
+     */
+    static byte[] envelope(ObjectMapper objectMapper, Customer customer, byte[] orders) {
+        final var out = new ByteArrayOutputStream(orders.length + 128);
+        try {
+            out.write(CUSTOMER_FIELD);
+            objectMapper.writeValue(out, customer);
+            out.write(ORDERS_FIELD);
+            out.write(orders);
+            out.write('}');
+        } catch (IOException e) {
+            throw new ResponseStatusException(valueOf(500), "Failed to serialize customer.", e);
+        }
+        return out.toByteArray();
     }
 
 }
 
 
-interface CustomerRepository extends ReactiveCrudRepository<Customer, Integer> {
+/**
+ * Serialized {@code /customers/{customer-id}} JSON responses, bounded by {@code response.cache.max-bytes}. Each
+ * one remembers the ETag of the orders it was built from, which is what decides whether it is still current.
+ */
+@Component
+class CustomerResponseCache {
+
+    private final Cache<Integer, CachedResponse> cache;
+
+
+    CustomerResponseCache(MeterRegistry meterRegistry,
+                          @Value("${response.cache.max-bytes:67108864}") long maxBytes) {
+        cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Integer customerId, CachedResponse response) -> response.body().length)
+                .recordStats()
+                .build(), "customer-responses");
+    }
+
+
+    record CachedResponse(String ordersEtag, byte[] body, String etag) {
+    }
+
 
+    CachedResponse get(int customerId) {
+        return cache.getIfPresent(customerId);
+    }
+
+
+    /**
+     * Only cached when orders gave an ETag to revalidate it with.
+     */
+    CachedResponse put(int customerId, String ordersEtag, byte[] body) {
+        final var response = new CachedResponse(ordersEtag, body, "\"" + DigestUtils.md5DigestAsHex(body) + "\"");
+        if (null != ordersEtag) {
+            cache.put(customerId, response);
+        }
+        return response;
+    }
 }
 
 
-record CustomizeBehavior(String emulateFailure, String httpFailureCode, String emulateDelay, String delayInMs,
-                         String customBehaviorTargetApp) {
+interface CustomerRepository extends ReactiveCrudRepository<Customer, Integer> {
+
+    @Query("select * from Customer where id > :after order by id limit :size")
+    Flux<Customer> findPage(int after, int size);
 }
 
 
@@ -165,6 +323,31 @@ record CustomerResponseDto(Customer customer, List<CustomerOrderView> orders) {
 }
 
 
+/**
+ * @param orders JSON array of the orders as sent by orders, {@code null} when they did not change since
+ *               {@code etag}
+ */
+record OrdersSnapshot(String etag, byte[] orders) {
+
+    /**
+     * The orders of a customer read from several shards during a rebalance, joined into one JSON array without
+     * parsing them. Without an ETag, as none of the shards' would match the joined orders.
+     */
+    static OrdersSnapshot merged(List<OrdersSnapshot> snapshots) {
+        return new OrdersSnapshot(null, snapshots.stream()
+                .map(snapshot -> new String(snapshot.orders(), StandardCharsets.UTF_8).strip())
+                .map(orders -> orders.substring(1, orders.length() - 1).strip())
+                .filter(orders -> !orders.isEmpty())
+                .collect(Collectors.joining(",", "[", "]"))
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
+
+
+record CustomerStreamEvent(Customer customer, CustomerOrderView order) {
+}
+
+
 @JsonInclude(NON_NULL)
 record Tracking(@JsonIgnore Integer orderId, Integer trackingId, @JsonProperty("partner") String deliveryPartner,
                 @JsonProperty("status") String deliveryStatus,
@@ -174,58 +357,263 @@ record Tracking(@JsonIgnore Integer orderId, Integer trackingId, @JsonProperty("
 
 @Service
 class OrderService {
-    private final WebClient webClient;
-    private static final Integer timeoutInMilliseconds = 12_000;
-
-
-    OrderService(WebClient.Builder webClientBuilder, @Value("${orders.service.base-path}") String serviceBasePath) {
-        final var connector = new ReactorClientHttpConnector(HttpClient.create()
-                .option(CONNECT_TIMEOUT_MILLIS, timeoutInMilliseconds)
-                .doOnConnected(conn -> conn.addHandlerLast(new ReadTimeoutHandler(timeoutInMilliseconds, MILLISECONDS))
-                        .addHandlerLast(new WriteTimeoutHandler(timeoutInMilliseconds, MILLISECONDS)))
-                .compress(true));
-        webClient = webClientBuilder.baseUrl(serviceBasePath)
-                .clientConnector(connector)
-                .filter(new TimeoutFilter())
-                .build();
-    }
-
-
-    Flux<CustomerOrderView> getCustomerOrders(final int customerId, CustomizeBehavior customizeBehavior) {
-        Function<UriBuilder, URI> uriBuilder =
-                builder -> builder.path("/customer-orders/{customer-id}")
-                        .build(customerId);
-        if (null != customizeBehavior) {
-            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
-            map.add("emulateFailure", customizeBehavior.emulateFailure());
-            map.add("httpFailureCode", customizeBehavior.httpFailureCode());
-            map.add("emulateDelay", customizeBehavior.emulateDelay());
-            map.add("delayInMs", customizeBehavior.delayInMs());
-            map.add("customizeBehaviorTargetApp", customizeBehavior.customBehaviorTargetApp());
-            uriBuilder = builder -> builder.path("/customer-orders/{customer-id}")
-                    .queryParams(map)
-                    .build(customerId);
+    private static final byte[] EMPTY_ORDERS = "[]".getBytes(StandardCharsets.UTF_8);
+    private final OrderShards orderShards;
+    private final Map<String, WebClient> shardClients;
+
+
+    /**
+     * One client per shard, sharing the connection pool but each with its own bulkhead, circuit breaker and
+     * timeouts, a failing shard failing only the customers it owns.
+     */
+    OrderService(WebClient.Builder webClientBuilder, OrderShards orderShards, DownstreamClients downstreamClients,
+                 ResilienceFilters resilienceFilters, MeterRegistry meterRegistry) {
+        final var builder = webClientBuilder.clientConnector(downstreamClients.connector("orders"))
+                .filter(new DownstreamMetricsFilter(meterRegistry, "orders"));
+        this.orderShards = orderShards;
+        shardClients = orderShards.shards().stream()
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), shard -> builder.clone()
+                        .baseUrl(shard)
+                        .filter(unlessDown(shard))
+                        .filter(resilienceFilters.forTarget("orders", URI.create(shard).getAuthority()))
+                        .filter(new TimeoutFilter())
+                        .filter(new FaultInjectionPropagation())
+                        .build()));
+    }
+
+
+
+
+    private ExchangeFilterFunction unlessDown(String shard) {
+        return (request, next) -> orderShards.isDown(shard)
+                ? error(new ResponseStatusException(valueOf(503), "orders shard " + shard + " is down"))
+                : next.exchange(request);
+    }
+
+
+    /**
+     * Conditional GET of the orders of a customer: with the ETag of a previous answer, orders answers 304 without
+     * running its chain when nothing changed, reported as a snapshot without orders. During a rebalance, the orders
+     * of every owner of the customer, merged, see {@link OrderShards#owners(int)}.
+     */
+    Mono<OrdersSnapshot> getCustomerOrders(final int customerId, String etag) {
+        final var owners = orderShards.owners(customerId);
+        if (1 == owners.size()) {
+            return getCustomerOrders(owners.get(0), customerId, etag);
         }
-        return this.webClient.get()
-                .uri(uriBuilder)
+        return Flux.fromIterable(owners)
+                .flatMapSequential(owner -> getCustomerOrders(owner, customerId, null))
+                .collectList()
+                .map(OrdersSnapshot::merged);
+    }
+
+
+    private Mono<OrdersSnapshot> getCustomerOrders(String shard, int customerId, String etag) {
+        return shardClients.get(shard).get()
+                .uri("/customer-orders/{customer-id}", customerId)
+                .accept(APPLICATION_JSON)
+                .headers(headers -> {
+                    if (null != etag) {
+                        headers.setIfNoneMatch(etag);
+                    }
+                })
+                .exchangeToMono(response -> {
+                    if (response.statusCode().value() == 304) {
+                        return response.releaseBody().thenReturn(new OrdersSnapshot(etag, null));
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.bodyToMono(String.class)
+                                .flatMap(body -> Mono.error(new ResponseStatusException(response.statusCode(), body)));
+                    }
+                    return response.bodyToMono(byte[].class)
+                            .defaultIfEmpty(EMPTY_ORDERS)
+                            .map(orders -> new OrdersSnapshot(response.headers().asHttpHeaders().getETag(), orders));
+                });
+    }
+
+
+    Flux<CustomerOrderView> streamCustomerOrders(final int customerId) {
+        return customerOrders(customerId, CustomerOrderView.class);
+    }
+
+
+    /**
+     * The NDJSON lines of orders as received, to be written out as they are.
+     */
+    Flux<DataBuffer> streamCustomerOrderLines(final int customerId) {
+        return customerOrders(customerId, DataBuffer.class);
+    }
+
+
+    private <T> Flux<T> customerOrders(final int customerId, Class<T> type) {
+        return Flux.fromIterable(orderShards.owners(customerId))
+                .concatMap(owner -> customerOrders(owner, customerId).bodyToFlux(type));
+    }
+
+
+    private WebClient.ResponseSpec customerOrders(String shard, int customerId) {
+        return shardClients.get(shard).get()
+                .uri("/customer-orders/{customer-id}", customerId)
+                .accept(APPLICATION_NDJSON)
                 .retrieve()
                 .onStatus(HttpStatusCode::isError,
                         response -> response.bodyToMono(String.class)
-                                .flatMap(body -> Mono.error(new ResponseStatusException(response.statusCode(), body))))
-                .bodyToFlux(CustomerOrderView.class);
+                                .flatMap(body -> Mono.error(new ResponseStatusException(response.statusCode(), body))));
     }
 
 }
 
+/**
+ * Where orders runs as several replicas (shards), each holding the orders of its own customers in its own database,
+ * bound from {@code orders.shards.*}. Without any, every customer lives at {@code orders.service.base-path}.
+ * <p>
+ * Orders hashes customers onto the same ring to refuse those it does not own, so {@code count} (or the number of
+ * {@code urls}) and {@code virtualNodes} must be the ones orders is given.
+ *
+ * @param urls           fixed base URLs of the shards, in the order of their ordinals
+ * @param urlTemplate    base URL of the shard with ordinal {@code {shard}}, e.g. the pods of a StatefulSet behind a
+ *                       headless service, for ordinals 0 to {@code count - 1}
+ * @param count          replicas of that StatefulSet
+ * @param previousCounts shard counts orders ran with before, whose owners are still read from while the orders they
+ *                       hold have not been moved to the current owners, none of them above the current count
+ * @param probeInterval  how often shards are checked for being reachable
+ * @param probeTimeout   how long a shard has to accept a connection to be reachable
+ * @param virtualNodes   points of each shard on the hash ring, evening out the share of customers it owns
+ */
+record OrderShardSettings(@DefaultValue List<String> urls,
+                          @DefaultValue("") String urlTemplate,
+                          @DefaultValue("1") int count,
+                          @DefaultValue List<Integer> previousCounts,
+                          @DefaultValue("10s") Duration probeInterval,
+                          @DefaultValue("1s") Duration probeTimeout,
+                          @DefaultValue("128") int virtualNodes) {
+}
+
+
+/**
+ * Routes every customer to the orders shard owning it on a {@link HashRing} of the configured shards. As an
+ * {@link IntFunction} it answers the base URL of the shard of a customer id.
+ * <p>
+ * A shard that cannot be reached is marked down rather than taken off the ring: its customers have their orders
+ * nowhere else, so they fail fast until it is back instead of being answered by another shard as having no orders.
+ * <p>
+ * Changing the shard count moves customers to other shards, not their orders: until these are moved, the count
+ * before is kept in {@code previous-counts} and the orders of a customer are read from its owners on every ring,
+ * see {@link #owners(int)}.
+ */
+@Component
+class OrderShards implements IntFunction<String>, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderShards.class);
+
+    private final List<String> shards;
+    private final HashRing ring;
+    private final List<HashRing> previousRings;
+    private final Duration probeTimeout;
+    private final Set<String> down = ConcurrentHashMap.newKeySet();
+    private final Disposable probing;
+
+
+    OrderShards(Environment environment, @Value("${orders.service.base-path}") String serviceBasePath,
+                MeterRegistry meterRegistry) {
+        final var settings = Binder.get(environment).bindOrCreate("orders.shards", OrderShardSettings.class);
+        if (!settings.urls().isEmpty()) {
+            shards = List.copyOf(settings.urls());
+        } else if (!settings.urlTemplate().isEmpty()) {
+            shards = IntStream.range(0, settings.count())
+                    .mapToObj(shard -> settings.urlTemplate().replace("{shard}", String.valueOf(shard)))
+                    .toList();
+        } else {
+            shards = List.of(serviceBasePath);
+        }
+        ring = new HashRing(shards.size(), settings.virtualNodes());
+        previousRings = settings.previousCounts().stream()
+                .filter(count -> count != shards.size())
+                .map(count -> {
+                    if (count > shards.size()) {
+                        throw new IllegalArgumentException("orders.shards.previous-counts " + count + " is above the "
+                                + shards.size() + " shards, the orders of removed shards being gone");
+                    }
+                    return new HashRing(count, settings.virtualNodes());
+                })
+                .toList();
+        probeTimeout = settings.probeTimeout();
+        probing = Flux.interval(Duration.ZERO, settings.probeInterval(), Schedulers.boundedElastic())
+                .subscribe(tick -> probe());
+        Gauge.builder("orders.shards", shards, List::size)
+                .description("Orders shards customers are spread over")
+                .register(meterRegistry);
+        Gauge.builder("orders.shards.down", down, Set::size)
+                .description("Orders shards failing their customers for being unreachable")
+                .register(meterRegistry);
+    }
 
-class TimeoutFilter implements ExchangeFilterFunction {
 
     @Override
-    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
-        return next.exchange(request)
-                .onErrorMap(error -> error instanceof WebClientRequestException ||
-                                     error instanceof ConnectTimeoutException || error instanceof TimeoutException,
-                        error -> new ResponseStatusException(HttpStatusCode.valueOf(408)));
+    public String apply(int customerId) {
+        return shards.get(ring.shardOf(customerId));
+    }
 
+
+    /**
+     * Every shard that may hold orders of a customer, its current owner first, then the ones owning it on the
+     * previous rings. Just the owner outside a rebalance.
+     */
+    List<String> owners(int customerId) {
+        final var owner = apply(customerId);
+        if (previousRings.isEmpty()) {
+            return List.of(owner);
+        }
+        final var owners = new LinkedHashSet<String>();
+        owners.add(owner);
+        for (HashRing previousRing : previousRings) {
+            owners.add(shards.get(previousRing.shardOf(customerId)));
+        }
+        return List.copyOf(owners);
+    }
+
+
+    List<String> shards() {
+        return shards;
+    }
+
+
+    boolean isDown(String shard) {
+        return down.contains(shard);
+    }
+
+
+    void probe() {
+        for (String shard : shards) {
+            if (reachable(shard)) {
+                if (down.remove(shard)) {
+                    LOG.info("Orders shard {} is back.", shard);
+                }
+            } else if (down.add(shard)) {
+                LOG.warn("Orders shard {} is unreachable, failing its customers until it is back.", shard);
+            }
+        }
+    }
+
+
+    /**
+     * Whether a shard accepts a TCP connection within the probe timeout, which a pod of a StatefulSet only does once
+     * it resolves through its headless service and listens.
+     */
+    boolean reachable(String shard) {
+        final var uri = URI.create(shard);
+        final var port = -1 != uri.getPort() ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), (int) probeTimeout.toMillis());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    @Override
+    public void destroy() {
+        probing.dispose();
     }
 }
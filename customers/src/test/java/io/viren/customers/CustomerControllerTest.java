@@ -0,0 +1,176 @@
+package io.viren.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.CustomizeBehavior;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerControllerTest {
+
+    private static final byte[] ORDERS = "[{\"orderId\":1,\"productName\":\"250g Tata Tea\"}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CustomerResponseCache customerResponseCache = new CustomerResponseCache(meterRegistry, 1 << 20);
+    private final CustomerController controller = new CustomerController(customerRepository, orderService,
+            new QueryMetrics(meterRegistry), customerResponseCache, new ObjectMapper());
+
+
+    @Test
+    void turnsDownUnknownCustomersWithoutAskingOrders() {
+        when(customerRepository.findById(42)).thenReturn(Mono.empty());
+
+        StepVerifier.create(controller.getCustomerById(42))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid customer id."))
+                .verify();
+        verify(orderService, never()).getCustomerOrders(anyInt(), isNull());
+    }
+
+
+    @Test
+    void cachesTheResponseBehindTheEtagOfOrders() {
+        when(customerRepository.findById(1)).thenReturn(Mono.just(new Customer(1, "Aakash")));
+        when(orderService.getCustomerOrders(1, null)).thenReturn(Mono.just(new OrdersSnapshot("\"v1\"", ORDERS)));
+
+        StepVerifier.create(controller.getCustomerById(1))
+                .assertNext(response -> assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                        .isEqualTo("{\"customer\":{\"id\":1,\"name\":\"Aakash\"},\"orders\":" + new String(ORDERS,
+                                StandardCharsets.UTF_8) + "}"))
+                .verifyComplete();
+        assertThat(customerResponseCache.get(1).ordersEtag()).isEqualTo("\"v1\"");
+    }
+
+
+    @Test
+    void servesTheCachedResponseWhileOrdersDidNotChange() {
+        final var cached = customerResponseCache.put(1, "\"v1\"", "cached".getBytes(StandardCharsets.UTF_8));
+        when(orderService.getCustomerOrders(1, "\"v1\"")).thenReturn(Mono.just(new OrdersSnapshot("\"v1\"", null)));
+
+        StepVerifier.create(controller.getCustomerById(1))
+                .assertNext(response -> {
+                    assertThat(response.getBody()).isSameAs(cached.body());
+                    assertThat(response.getHeaders().getETag()).isEqualTo(cached.etag());
+                })
+                .verifyComplete();
+        verify(customerRepository, never()).findById(anyInt());
+    }
+
+
+    @Test
+    void rebuildsTheResponseOnceOrdersChanged() {
+        customerResponseCache.put(1, "\"v1\"", "cached".getBytes(StandardCharsets.UTF_8));
+        when(customerRepository.findById(1)).thenReturn(Mono.just(new Customer(1, "Aakash")));
+        when(orderService.getCustomerOrders(1, "\"v1\"")).thenReturn(Mono.just(new OrdersSnapshot("\"v2\"", ORDERS)));
+
+        StepVerifier.create(controller.getCustomerById(1))
+                .assertNext(response -> assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                        .contains("\"orders\":[{\"orderId\":1"))
+                .verifyComplete();
+        assertThat(customerResponseCache.get(1).ordersEtag()).isEqualTo("\"v2\"");
+    }
+
+
+    @Test
+    void bypassesTheCacheForEmulatedBehavior() {
+        customerResponseCache.put(1, "\"v1\"", "cached".getBytes(StandardCharsets.UTF_8));
+        when(customerRepository.findById(1)).thenReturn(Mono.just(new Customer(1, "Aakash")));
+        when(orderService.getCustomerOrders(1, null)).thenReturn(Mono.just(new OrdersSnapshot(null, ORDERS)));
+        final var behavior = new CustomizeBehavior(true, 500, 0.0, false, 0, null, "orders");
+
+        StepVerifier.create(controller.getCustomerById(1).contextWrite(Context.of(CustomizeBehavior.class, behavior)))
+                .assertNext(response -> assertThat(response.getBody()).isNotEqualTo("cached".getBytes()))
+                .verifyComplete();
+        assertThat(customerResponseCache.get(1).ordersEtag()).as("left as it was").isEqualTo("\"v1\"");
+    }
+
+
+    @Test
+    void streamsTheCustomerLineFollowedByTheOrderLinesAsReceived() {
+        when(customerRepository.findById(1)).thenReturn(Mono.just(new Customer(1, "Aakash")));
+        final var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+        when(orderService.streamCustomerOrderLines(1)).thenReturn(Flux.just(
+                bufferFactory.wrap("{\"orderId\":1}\n".getBytes(StandardCharsets.UTF_8)),
+                bufferFactory.wrap("{\"orderId\":2}\n".getBytes(StandardCharsets.UTF_8))));
+
+        StepVerifier.create(controller.streamCustomerById(1, new MockServerHttpResponse())
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8)))
+                .expectNext("{\"id\":1,\"name\":\"Aakash\"}\n", "{\"orderId\":1}\n", "{\"orderId\":2}\n")
+                .verifyComplete();
+    }
+
+
+    @Test
+    void streamsNothingForUnknownCustomersWithoutAskingOrders() {
+        when(customerRepository.findById(42)).thenReturn(Mono.empty());
+
+        StepVerifier.create(controller.streamCustomerById(42, new MockServerHttpResponse()))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid customer id."))
+                .verify();
+        StepVerifier.create(controller.streamCustomerEventsById(42))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid customer id."))
+                .verify();
+        verify(orderService, never()).streamCustomerOrderLines(anyInt());
+        verify(orderService, never()).streamCustomerOrders(anyInt());
+    }
+
+
+    @Test
+    void sendsTheCustomerEventFollowedByAnEventPerOrder() {
+        final var customer = new Customer(1, "Aakash");
+        final var first = new CustomerOrderView(1, 1, "250g Tata Tea", null);
+        final var second = new CustomerOrderView(2, 1, "1kg Toor Dal", null);
+        when(customerRepository.findById(1)).thenReturn(Mono.just(customer));
+        when(orderService.streamCustomerOrders(1)).thenReturn(Flux.just(first, second));
+
+        StepVerifier.create(controller.streamCustomerEventsById(1))
+                .assertNext(event -> assertThat(event).extracting(ServerSentEvent::event, ServerSentEvent::data)
+                        .containsExactly("customer", customer))
+                .assertNext(event -> assertThat(event).extracting(ServerSentEvent::event, ServerSentEvent::data)
+                        .containsExactly("order", first))
+                .assertNext(event -> assertThat(event).extracting(ServerSentEvent::event, ServerSentEvent::data)
+                        .containsExactly("order", second))
+                .verifyComplete();
+    }
+
+
+    @Test
+    void turnsDownPageSizesOutOfRangeWithoutQuerying() {
+        StepVerifier.create(controller.getCustomers(0, 0))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid page size."))
+                .verify();
+        StepVerifier.create(controller.getCustomers(0, 1_001))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid page size."))
+                .verify();
+        verify(customerRepository, never()).findPage(anyInt(), anyInt());
+    }
+
+
+    @Test
+    void readsThePageAfterTheLastIdSeen() {
+        when(customerRepository.findPage(2, 2)).thenReturn(Flux.just(new Customer(4, "Dev"), new Customer(5, "Esha")));
+
+        StepVerifier.create(controller.getCustomers(2, 2).map(Customer::id))
+                .expectNext(4, 5)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,54 @@
+package io.viren.customers;
+
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.H2Dialect;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+
+class CustomerRepositoryTest {
+
+    private final DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(
+            "r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+    private final CustomerRepository customerRepository = new R2dbcRepositoryFactory(
+            new R2dbcEntityTemplate(databaseClient, H2Dialect.INSTANCE))
+            .getRepository(CustomerRepository.class);
+
+
+    @BeforeEach
+    void setUp() {
+        databaseClient.sql("create table Customer (id serial primary key, name varchar(255) not null)")
+                .then()
+                .thenMany(databaseClient.sql("insert into Customer (name) values ('a'), ('b'), ('c'), ('d'), ('e')")
+                        .then())
+                .then(databaseClient.sql("delete from Customer where id = 3").then())
+                .block();
+    }
+
+
+    @Test
+    void pagesThroughCustomersByTheLastIdSeen() {
+        StepVerifier.create(customerRepository.findPage(0, 2).map(Customer::id))
+                .expectNext(1, 2)
+                .verifyComplete();
+        StepVerifier.create(customerRepository.findPage(2, 2).map(Customer::id))
+                .as("skips the gap left by a deleted customer")
+                .expectNext(4, 5)
+                .verifyComplete();
+        StepVerifier.create(customerRepository.findPage(5, 2))
+                .verifyComplete();
+    }
+
+
+    @Test
+    void answersAShortLastPage() {
+        StepVerifier.create(customerRepository.findPage(4, 100).map(Customer::name))
+                .expectNext("e")
+                .verifyComplete();
+    }
+}
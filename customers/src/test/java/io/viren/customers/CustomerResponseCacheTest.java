@@ -0,0 +1,38 @@
+package io.viren.customers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerResponseCacheTest {
+
+    private final CustomerResponseCache cache = new CustomerResponseCache(new SimpleMeterRegistry(), 1 << 20);
+
+
+    @Test
+    void keepsOnlyResponsesItCanRevalidate() {
+        final var response = cache.put(1, null, body("{}"));
+
+        assertThat(response.etag()).isNotBlank();
+        assertThat(cache.get(1)).isNull();
+    }
+
+
+    @Test
+    void tagsEqualBodiesAlike() {
+        final var first = cache.put(1, "\"v1\"", body("{\"customer\":1}"));
+        final var second = cache.put(2, "\"v7\"", body("{\"customer\":1}"));
+        final var other = cache.put(3, "\"v1\"", body("{\"customer\":3}"));
+
+        assertThat(first.etag()).startsWith("\"").endsWith("\"").isEqualTo(second.etag()).isNotEqualTo(other.etag());
+        assertThat(cache.get(1)).isSameAs(first);
+    }
+
+
+    private static byte[] body(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
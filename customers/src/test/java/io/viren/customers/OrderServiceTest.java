@@ -0,0 +1,76 @@
+package io.viren.customers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.ResilienceFilters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
+class OrderServiceTest {
+
+    private static final String ORDER_LINES = "{\"orderId\":1,\"productName\":\"250g Tata Tea\"}\n"
+                                              + "{\"orderId\":2,\"productName\":\"1kg Toor Dal\"}\n";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ClientRequest> requests = new CopyOnWriteArrayList<>();
+    private final OrderShards orderShards = new OrderShards(new MockEnvironment()
+            .withProperty("orders.shards.probe-interval", "1h"), "http://orders:9001", meterRegistry) {
+        @Override
+        boolean reachable(String shard) {
+            return true;
+        }
+    };
+    private final OrderService orderService = new OrderService(WebClient.builder().exchangeFunction(request -> {
+        requests.add(request);
+        return Mono.just(ClientResponse.create(OK).header(CONTENT_TYPE, APPLICATION_NDJSON_VALUE).body(ORDER_LINES)
+                .build());
+    }), orderShards, new DownstreamClients(new MockEnvironment()),
+            new ResilienceFilters(new MockEnvironment(), meterRegistry), meterRegistry);
+
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+
+    @Test
+    void streamsTheOrdersOfACustomerAsOrdersSendsThem() {
+        StepVerifier.create(orderService.streamCustomerOrders(7))
+                .expectNext(new CustomerOrderView(1, 0, "250g Tata Tea", null),
+                        new CustomerOrderView(2, 0, "1kg Toor Dal", null))
+                .verifyComplete();
+        assertThat(requests).singleElement().satisfies(request -> {
+            assertThat(request.url().getPath()).isEqualTo("/customer-orders/7");
+            assertThat(request.headers().getAccept()).containsExactly(APPLICATION_NDJSON);
+        });
+    }
+
+
+    @Test
+    void passesTheOrderLinesThroughWithoutDecodingThem() {
+        StepVerifier.create(orderService.streamCustomerOrderLines(7)
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                        .reduce(String::concat))
+                .expectNext(ORDER_LINES)
+                .verifyComplete();
+        assertThat(requests).singleElement()
+                .satisfies(request -> assertThat(request.headers().getAccept()).containsExactly(APPLICATION_NDJSON));
+    }
+}
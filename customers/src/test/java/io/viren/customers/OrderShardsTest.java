@@ -0,0 +1,210 @@
+package io.viren.customers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.HashRing;
+import io.viren.commons.ResilienceFilters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+class OrderShardsTest {
+
+    private static final List<String> SHARDS = List.of("http://orders-0.orders:9001", "http://orders-1.orders:9001",
+            "http://orders-2.orders:9001");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+    private final OrderShards orderShards = new OrderShards(new MockEnvironment()
+            .withProperty("orders.shards.url-template", "http://orders-{shard}.orders:9001")
+            .withProperty("orders.shards.count", "3")
+            .withProperty("orders.shards.probe-interval", "1h"), "http://orders:9001", meterRegistry) {
+        @Override
+        boolean reachable(String shard) {
+            return !missing.contains(shard);
+        }
+    };
+
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+
+    @Test
+    void buildsTheRingFromTheConfiguredShardCount() {
+        assertThat(orderShards.shards()).containsExactlyElementsOf(SHARDS);
+        assertThat(IntStream.range(0, 1000).mapToObj(orderShards::apply).distinct())
+                .containsExactlyInAnyOrderElementsOf(SHARDS);
+    }
+
+
+    @Test
+    void routesEveryCustomerToOrdersWithoutAnyShards() {
+        final var unsharded = new OrderShards(new MockEnvironment(), "http://orders:9001", new SimpleMeterRegistry());
+        unsharded.destroy();
+
+        assertThat(unsharded.shards()).containsExactly("http://orders:9001");
+        assertThat(unsharded.apply(42)).isEqualTo("http://orders:9001");
+        assertThat(unsharded.owners(42)).containsExactly("http://orders:9001");
+    }
+
+
+    @Test
+    void probesEveryShardWithATcpConnect() throws IOException {
+        final var probed = new OrderShards(new MockEnvironment()
+                .withProperty("orders.shards.probe-interval", "1h"), "http://orders:9001", meterRegistry);
+        probed.destroy();
+        final String shard;
+        try (var server = new ServerSocket(0)) {
+            shard = "http://localhost:" + server.getLocalPort();
+            assertThat(probed.reachable(shard)).isTrue();
+        }
+
+        assertThat(probed.reachable(shard)).isFalse();
+    }
+
+
+    @Test
+    void readsTheOwnersOnThePreviousRingsDuringARebalance() {
+        final var rebalancing = new OrderShards(new MockEnvironment()
+                .withProperty("orders.shards.url-template", "http://orders-{shard}.orders:9001")
+                .withProperty("orders.shards.count", "3")
+                .withProperty("orders.shards.previous-counts", "2")
+                .withProperty("orders.shards.probe-interval", "1h"), "http://orders:9001", meterRegistry);
+        rebalancing.destroy();
+        final var before = new HashRing(2, 128);
+
+        assertThat(IntStream.range(0, 1000)).allSatisfy(customerId -> assertThat(rebalancing.owners(customerId))
+                .containsExactlyElementsOf(new LinkedHashSet<>(List.of(orderShards.apply(customerId),
+                        SHARDS.get(before.shardOf(customerId))))));
+        assertThat(IntStream.range(0, 1000).filter(customerId -> rebalancing.owners(customerId).size() == 2))
+                .isNotEmpty()
+                .allSatisfy(customerId -> assertThat(rebalancing.apply(customerId)).isEqualTo(SHARDS.get(2)));
+    }
+
+
+    @Test
+    void refusesToReadFromShardsNoLongerThere() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new OrderShards(new MockEnvironment()
+                .withProperty("orders.shards.url-template", "http://orders-{shard}.orders:9001")
+                .withProperty("orders.shards.count", "2")
+                .withProperty("orders.shards.previous-counts", "3"), "http://orders:9001", meterRegistry));
+    }
+
+
+    @Test
+    void mergesTheOrdersOfEveryOwnerWithoutAnETag() {
+        final var rebalancing = new OrderShards(new MockEnvironment()
+                .withProperty("orders.shards.url-template", "http://orders-{shard}.orders:9001")
+                .withProperty("orders.shards.count", "3")
+                .withProperty("orders.shards.previous-counts", "2")
+                .withProperty("orders.shards.probe-interval", "1h"), "http://orders:9001", meterRegistry) {
+            @Override
+            boolean reachable(String shard) {
+                return true;
+            }
+        };
+        rebalancing.destroy();
+        final var orderService = new OrderService(WebClient.builder().exchangeFunction(request -> Mono.just(
+                ClientResponse.create(OK).header(CONTENT_TYPE, APPLICATION_JSON_VALUE).header(ETAG, "\"1\"")
+                        .body(request.url().getHost().equals("orders-2.orders") ? "[ ]" : "[{\"id\":1},{\"id\":2}]")
+                        .build())), rebalancing, new DownstreamClients(new MockEnvironment()),
+                new ResilienceFilters(new MockEnvironment(), meterRegistry), meterRegistry);
+        final var movedCustomerId = IntStream.range(0, 1000)
+                .filter(customerId -> rebalancing.owners(customerId).size() == 2)
+                .findFirst()
+                .orElseThrow();
+        final var stayingCustomerId = IntStream.range(0, 1000)
+                .filter(customerId -> rebalancing.owners(customerId).size() == 1)
+                .findFirst()
+                .orElseThrow();
+
+        StepVerifier.create(orderService.getCustomerOrders(movedCustomerId, "\"1\""))
+                .assertNext(snapshot -> {
+                    assertThat(snapshot.etag()).isNull();
+                    assertThat(new String(snapshot.orders(), UTF_8)).isEqualTo("[{\"id\":1},{\"id\":2}]");
+                })
+                .verifyComplete();
+        StepVerifier.create(orderService.getCustomerOrders(stayingCustomerId, null))
+                .assertNext(snapshot -> assertThat(snapshot.etag()).isEqualTo("\"1\""))
+                .verifyComplete();
+        assertThat(new String(OrdersSnapshot.merged(List.of(new OrdersSnapshot(null, "[{\"id\":1}]".getBytes(UTF_8)),
+                new OrdersSnapshot(null, "[{\"id\":2}]".getBytes(UTF_8)))).orders(), UTF_8))
+                .isEqualTo("[{\"id\":1},{\"id\":2}]");
+    }
+
+
+    @Test
+    void marksAMissingShardDownWithoutMovingItsCustomers() {
+        final var routes = IntStream.range(0, 1000).mapToObj(orderShards::apply).toList();
+
+        missing.add(SHARDS.get(1));
+        orderShards.probe();
+
+        assertThat(orderShards.isDown(SHARDS.get(1))).isTrue();
+        assertThat(orderShards.isDown(SHARDS.get(0))).isFalse();
+        assertThat(IntStream.range(0, 1000).mapToObj(orderShards::apply).toList()).isEqualTo(routes);
+        assertThat(meterRegistry.get("orders.shards.down").gauge().value()).isEqualTo(1);
+
+        missing.clear();
+        orderShards.probe();
+
+        assertThat(orderShards.isDown(SHARDS.get(1))).isFalse();
+    }
+
+
+    @Test
+    void failsTheCustomersOfADownShardWithoutCallingIt() {
+        final var calls = new AtomicInteger();
+        final var orderService = new OrderService(WebClient.builder().exchangeFunction(request -> {
+            calls.incrementAndGet();
+            return Mono.just(ClientResponse.create(OK).header(CONTENT_TYPE, APPLICATION_JSON_VALUE).body("[]").build());
+        }), orderShards, new DownstreamClients(new MockEnvironment()),
+                new ResilienceFilters(new MockEnvironment(), meterRegistry), meterRegistry);
+        final var customerId = IntStream.range(0, 1000)
+                .filter(id -> orderShards.apply(id).equals(SHARDS.get(1)))
+                .findFirst()
+                .orElseThrow();
+        final var otherCustomerId = IntStream.range(0, 1000)
+                .filter(id -> orderShards.apply(id).equals(SHARDS.get(0)))
+                .findFirst()
+                .orElseThrow();
+
+        missing.add(SHARDS.get(1));
+        orderShards.probe();
+
+        StepVerifier.create(orderService.getCustomerOrders(customerId, null))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(503)))
+                .verify();
+        assertThat(calls).hasValue(0);
+        StepVerifier.create(orderService.getCustomerOrders(otherCustomerId, null))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(calls).hasValue(1);
+    }
+}
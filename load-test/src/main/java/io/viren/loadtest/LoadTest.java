@@ -0,0 +1,340 @@
+package io.viren.loadtest;
+
+import com.example.trackingservice.TrackingServiceApplication;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import io.viren.customers.CustomersApplication;
+import io.viren.orders.OrdersApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Boots tracking-service, orders and customers on random ports in this JVM, seeds them and drives an open-model
+ * (fixed arrival rate) load against customers. Latencies are measured from the intended send time so a stalled
+ * system cannot hide its queueing delay (coordinated omission).
+ * <p>
+ * Arguments are {@code --key=value} pairs, see {@link LoadSettings}. Built with {@code -Pblocking}, the apps serve
+ * the same endpoints on Spring MVC and JDBC, for an A/B of both stacks under the same load. With several orders
+ * shards, customers routes to them by customer id and each shard is seeded with the orders of its own customers.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        final var settings = LoadSettings.of(args);
+        try (var standIns = StandIns.start(settings.ordersShards())) {
+            standIns.seed(settings.customers(), settings.ordersPerCustomer());
+            final var load = new OpenModelLoad(standIns.customersBaseUrl(), standIns::allocatedBytes, settings);
+            load.run(settings.warmup());
+            final var rejectionsAtStart = standIns.rejections();
+            final var report = load.run(settings.duration());
+            report.print(System.out);
+            standIns.rejections().forEach((app, rejections) -> System.out.printf("shed by %s: %.0f%n", app,
+                    rejections - rejectionsAtStart.get(app)));
+            if (null != settings.histogramOutput()) {
+                try (var out = new PrintStream(settings.histogramOutput())) {
+                    report.histogram().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+}
+
+
+/**
+ * @param rate              requests per second sent whatever the response times are
+ * @param path              customers path, {@code {id}} being replaced by a random seeded customer id
+ * @param histogramOutput   file receiving the full percentile distribution (in ms), none when {@code null}
+ * @param ordersShards      orders instances booted, each with its own database
+ */
+record LoadSettings(int rate, Duration warmup, Duration duration, int customers, int ordersPerCustomer,
+                    int maxConnections, String path, String histogramOutput, int ordersShards) {
+
+    static LoadSettings of(String[] args) {
+        final Map<String, String> values = new HashMap<>();
+        Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && arg.contains("="))
+                .forEach(arg -> values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1)));
+        return new LoadSettings(Integer.parseInt(values.getOrDefault("rate", "200")),
+                Duration.parse(values.getOrDefault("warmup", "PT10S")),
+                Duration.parse(values.getOrDefault("duration", "PT30S")),
+                Integer.parseInt(values.getOrDefault("customers", "1000")),
+                Integer.parseInt(values.getOrDefault("orders-per-customer", "10")),
+                Integer.parseInt(values.getOrDefault("max-connections", "500")),
+                values.getOrDefault("path", "/customers/{id}"),
+                values.get("histogram-output"),
+                Integer.parseInt(values.getOrDefault("orders-shards", "1")));
+    }
+}
+
+
+class StandIns implements AutoCloseable {
+
+    private static final int ORDER_ID_BLOCK = 10_000_000;
+
+    private final ConfigurableApplicationContext tracking;
+    private final Map<String, ConfigurableApplicationContext> orders;
+    private final ConfigurableApplicationContext customers;
+
+
+    private StandIns(ConfigurableApplicationContext tracking, Map<String, ConfigurableApplicationContext> orders,
+                     ConfigurableApplicationContext customers) {
+        this.tracking = tracking;
+        this.orders = orders;
+        this.customers = customers;
+    }
+
+
+    /**
+     * A single orders shard keeps the database name of the unsharded set up. {@code args} go to every app.
+     */
+    static StandIns start(int ordersShards, String... args) {
+        final var tracking = boot(TrackingServiceApplication.class, "tracking", args);
+        final Map<String, ConfigurableApplicationContext> orders = new LinkedHashMap<>();
+        for (int shard = 0; shard < ordersShards; shard++) {
+            final var context = boot(OrdersApplication.class, 1 == ordersShards ? "orders" : "orders-" + shard,
+                    concat(args, "--tracking.service.base.url=" + baseUrl(tracking), "--orders.shard=" + shard,
+                            "--orders.shards.count=" + ordersShards, "--orders.ids.block-size=" + ORDER_ID_BLOCK));
+            orders.put(baseUrl(context), context);
+        }
+        final var customers = boot(CustomersApplication.class, "customers", concat(args,
+                "--orders.service.base-path=" + orders.keySet().iterator().next(),
+                "--orders.shards.urls=" + String.join(",", orders.keySet())));
+        return new StandIns(tracking, orders, customers);
+    }
+
+
+    private static String[] concat(String[] args, String... more) {
+        return Stream.concat(Stream.of(args), Stream.of(more)).toArray(String[]::new);
+    }
+
+
+    /**
+     * All three apps share one classpath, hence one {@code application.properties} and one {@code schema.sql}
+     * resolve for everybody. What each app needs is passed as command line args (which win over the file), and
+     * every app gets its own H2 database initialized from all the schema files. The database is named, so the JDBC
+     * side of the {@code blocking} build opens the same one.
+     */
+    private static ConfigurableApplicationContext boot(Class<?> application, String database, String... args) {
+        final List<String> arguments = new ArrayList<>(List.of("--server.port=0",
+                "--spring.r2dbc.url=r2dbc:h2:mem:///" + database + "?options=DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=64",
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=64",
+                "--spring.sql.init.schema-locations=classpath*:schema.sql",
+                "--logging.level.root=warn"));
+        arguments.addAll(List.of(args));
+        return new SpringApplicationBuilder(application)
+                .bannerMode(Banner.Mode.OFF)
+                .run(arguments.toArray(String[]::new));
+    }
+
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+
+    String customersBaseUrl() {
+        return baseUrl(customers);
+    }
+
+
+    /**
+     * The bean of a type in every app, keyed by app: customers, the orders shards by base URL, and tracking-service.
+     */
+    <T> Map<String, T> beans(Class<T> type) {
+        final Map<String, T> beans = new LinkedHashMap<>();
+        beans.put("customers", customers.getBean(type));
+        orders.forEach((baseUrl, context) -> beans.put(baseUrl, context.getBean(type)));
+        beans.put("tracking-service", tracking.getBean(type));
+        return beans;
+    }
+
+
+    /**
+     * Bytes allocated so far by the whole JVM, hence all three apps and the load itself, as counted at garbage
+     * collections.
+     */
+    double allocatedBytes() {
+        return customers.getBean(MeterRegistry.class).get("jvm.gc.memory.allocated").counter().count();
+    }
+
+
+    /**
+     * Requests rejected so far by the inbound concurrency limits of each app.
+     */
+    Map<String, Double> rejections() {
+        final Map<String, Double> rejections = new LinkedHashMap<>();
+        rejections.put("customers", rejections(customers));
+        rejections.put("orders", orders.values().stream().mapToDouble(StandIns::rejections).sum());
+        rejections.put("tracking-service", rejections(tracking));
+        return rejections;
+    }
+
+
+    private static double rejections(ConfigurableApplicationContext context) {
+        return context.getBean(MeterRegistry.class).find("inbound.rejections").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+
+    /**
+     * Each orders shard gets the orders of the customers customers routes to it, numbered from the start of its block
+     * of ids, and tracking-service the tracking of them all.
+     */
+    @SuppressWarnings("unchecked")
+    void seed(int customerCount, int ordersPerCustomer) {
+        insert(customers.getBean(ConnectionFactory.class), "insert into Customer (name) values ($1)", customerCount,
+                (statement, row) -> statement.bind(0, "customer-" + row));
+        final IntFunction<String> shardOf = customers.getBean("orderShards", IntFunction.class);
+        final Map<String, List<Integer>> customerIds = IntStream.rangeClosed(1, customerCount)
+                .boxed()
+                .collect(groupingBy(shardOf::apply));
+        final List<Integer> orderIds = new ArrayList<>();
+        int shard = 0;
+        for (var entry : orders.entrySet()) {
+            final var shardCustomerIds = customerIds.getOrDefault(entry.getKey(), List.of());
+            insert(entry.getValue().getBean(ConnectionFactory.class),
+                    "insert into CustomerOrder (customer_id, product_name) values ($1, $2)",
+                    shardCustomerIds.size() * ordersPerCustomer,
+                    (statement, row) -> statement.bind(0, shardCustomerIds.get(row / ordersPerCustomer))
+                            .bind(1, "product-" + row));
+            for (int row = 0; row < shardCustomerIds.size() * ordersPerCustomer; row++) {
+                orderIds.add(shard * ORDER_ID_BLOCK + row + 1);
+            }
+            shard++;
+        }
+        insert(tracking.getBean(ConnectionFactory.class),
+                "merge into Tracking (order_id, partner, status) key (order_id) values ($1, $2, $3)",
+                orderIds.size(),
+                (statement, row) -> statement.bind(0, orderIds.get(row)).bind(1, "FEDEX").bind(2, "DISPATCHED"));
+    }
+
+
+    private static void insert(ConnectionFactory connectionFactory, String sql, int rows,
+                               BiConsumer<Statement, Integer> binder) {
+        Flux.range(0, rows)
+                .buffer(1_000)
+                .concatMap(chunk -> Mono.usingWhen(connectionFactory.create(), connection -> {
+                    final var statement = connection.createStatement(sql);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        binder.accept(statement, chunk.get(i));
+                    }
+                    return Flux.from(statement.execute())
+                            .flatMap(Result::getRowsUpdated)
+                            .then();
+                }, Connection::close))
+                .blockLast();
+    }
+
+
+    @Override
+    public void close() {
+        customers.close();
+        orders.values().forEach(ConfigurableApplicationContext::close);
+        tracking.close();
+    }
+}
+
+
+class OpenModelLoad {
+
+    private final WebClient webClient;
+    private final DoubleSupplier allocatedBytes;
+    private final LoadSettings settings;
+
+
+    OpenModelLoad(String baseUrl, DoubleSupplier allocatedBytes, LoadSettings settings) {
+        this.allocatedBytes = allocatedBytes;
+        this.settings = settings;
+        webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(
+                        ConnectionProvider.builder("load-test")
+                                .maxConnections(settings.maxConnections())
+                                .pendingAcquireMaxCount(-1)
+                                .build())))
+                .build();
+    }
+
+
+    LoadReport run(Duration duration) {
+        final var recorder = new Recorder(3);
+        final var errors = new AtomicLong();
+        final var intervalInNanos = NANOSECONDS.convert(Duration.ofSeconds(1)) / settings.rate();
+        final var requests = duration.toNanos() / intervalInNanos;
+        final var allocatedAtStart = allocatedBytes.getAsDouble();
+        final var start = System.nanoTime();
+        Flux.interval(Duration.ofNanos(intervalInNanos))
+                .take(requests)
+                .flatMap(tick -> {
+                    final var intendedStart = start + (tick + 1) * intervalInNanos;
+                    final var customerId = ThreadLocalRandom.current().nextInt(settings.customers()) + 1;
+                    return webClient.get()
+                            .uri(settings.path(), customerId)
+                            .retrieve()
+                            .toBodilessEntity()
+                            .doOnError(error -> errors.incrementAndGet())
+                            .onErrorResume(error -> Mono.empty())
+                            .doFinally(signal -> recorder.recordValue((System.nanoTime() - intendedStart) / 1_000));
+                }, Integer.MAX_VALUE)
+                .blockLast();
+        return new LoadReport(recorder.getIntervalHistogram(), errors.get(),
+                Duration.ofNanos(System.nanoTime() - start), allocatedBytes.getAsDouble() - allocatedAtStart);
+    }
+}
+
+
+/**
+ * @param histogram      latencies in microseconds
+ * @param allocatedBytes allocated by the whole JVM during the run, see {@link StandIns#allocatedBytes()}
+ */
+record LoadReport(Histogram histogram, long errors, Duration elapsed, double allocatedBytes) {
+
+    void print(PrintStream out) {
+        out.printf("requests: %d, errors: %d, throughput: %.1f req/s%n", histogram.getTotalCount(), errors,
+                histogram.getTotalCount() * 1_000.0 / elapsed.toMillis());
+        out.printf("latency ms p50: %.2f, p90: %.2f, p99: %.2f, p99.9: %.2f, max: %.2f%n",
+                histogram.getValueAtPercentile(50) / 1_000.0, histogram.getValueAtPercentile(90) / 1_000.0,
+                histogram.getValueAtPercentile(99) / 1_000.0, histogram.getValueAtPercentile(99.9) / 1_000.0,
+                histogram.getMaxValue() / 1_000.0);
+        out.printf("allocated per request: %.1f KB%n", allocatedBytes / 1_024 / Math.max(1, histogram.getTotalCount()));
+    }
+}
@@ -0,0 +1,76 @@
+package io.viren.loadtest;
+
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.viren.commons.InMemorySpanCollector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracePropagationTest {
+
+    private static StandIns standIns;
+
+
+    @BeforeAll
+    static void setUp() {
+        standIns = StandIns.start(1, "--tracing.exporter=memory");
+    }
+
+
+    @AfterAll
+    static void tearDown() {
+        standIns.close();
+    }
+
+
+    @Test
+    void tracesARequestToCustomersThroughOrdersAndTrackingService() throws InterruptedException {
+        final var collectors = standIns.beans(InMemorySpanCollector.class);
+        collectors.values().forEach(InMemorySpanCollector::reset);
+
+        WebClient.create(standIns.customersBaseUrl()).get()
+                .uri("/customers/{id}", 1)
+                .retrieve()
+                .toBodilessEntity()
+                .block();
+
+        flushUntil(() -> !serverTraceIds(collectors.get("customers")).isEmpty());
+        assertThat(serverTraceIds(collectors.get("customers"))).hasSize(1);
+        final var traceId = serverTraceIds(collectors.get("customers")).iterator().next();
+        flushUntil(() -> collectors.values().stream()
+                .allMatch(collector -> serverTraceIds(collector).contains(traceId)));
+        assertThat(collectors).hasSize(3).allSatisfy((app, collector) -> assertThat(serverTraceIds(collector))
+                .as("traces served by %s", app)
+                .contains(traceId));
+    }
+
+
+    private static Set<String> serverTraceIds(InMemorySpanCollector collector) {
+        return collector.spans().stream()
+                .filter(span -> span.getKind() == SpanKind.SERVER)
+                .map(SpanData::getTraceId)
+                .collect(Collectors.toSet());
+    }
+
+
+    /**
+     * Server spans end once the response is written, possibly after the client got it, and are exported in batches.
+     */
+    private static void flushUntil(BooleanSupplier done) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && !done.getAsBoolean(); attempt++) {
+            standIns.beans(SdkTracerProvider.class).values()
+                    .forEach(tracerProvider -> tracerProvider.forceFlush().join(1, SECONDS));
+            Thread.sleep(100);
+        }
+    }
+}
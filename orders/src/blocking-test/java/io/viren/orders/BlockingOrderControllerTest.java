@@ -0,0 +1,66 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.DataClassRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
+class BlockingOrderControllerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final BlockingTrackingService trackingService = mock(BlockingTrackingService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final BlockingOrderController controller = new BlockingOrderController(jdbcTemplate, trackingService,
+            new QueryMetrics(meterRegistry), new CustomerOrdersCache(meterRegistry, 1 << 20), objectMapper);
+
+
+    @Test
+    void turnsDownPageSizesOutOfRangeWithoutQuerying() {
+        assertThatThrownBy(() -> controller.getAllOrders(0, 0)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid page size.");
+        assertThatThrownBy(() -> controller.getAllOrders(0, 1_001)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid page size.");
+        verify(jdbcTemplate, never()).query(anyString(), any(DataClassRowMapper.class), anyInt(), anyInt());
+    }
+
+
+    @Test
+    void streamsTheTrackedOrdersOfACustomerAsNdjson() throws IOException {
+        when(jdbcTemplate.query(anyString(), any(DataClassRowMapper.class), eq(4)))
+                .thenReturn(List.of(new OrderLine(4, "coffee"), new OrderLine(5, "detergent")));
+        when(trackingService.trackAll(List.of(4, 5)))
+                .thenReturn(Map.of(4, new Tracking(4, 40, "DHL", "DELIVERED", null)));
+        final var response = new MockHttpServletResponse();
+
+        controller.streamCustomerOrders(4, response);
+
+        assertThat(response.getContentType()).isEqualTo(APPLICATION_NDJSON_VALUE);
+        assertThat(objectMapper.readerFor(OrderOut.class).<OrderOut>readValues(response.getContentAsByteArray())
+                .readAll())
+                .containsExactly(new OrderOut(4, "coffee", new Tracking(null, 40, "DHL", "DELIVERED", null)),
+                        new OrderOut(5, "detergent", null));
+        assertThat(response.getContentAsString()).endsWith("\n");
+    }
+}
@@ -0,0 +1,133 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.HashRing;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
+class BlockingOrderIngestionControllerTest {
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final CustomerOrdersCache customerOrdersCache = new CustomerOrdersCache(meterRegistry, 1 << 20);
+    private final BlockingOrderIngestionController controller = controller(new ShardOwnership(0, 1, 128));
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Arrays.stream(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .forEach(jdbcTemplate::execute);
+    }
+
+
+    @Test
+    void insertsInBatchesAndWritesBackTheOrdersWithTheirIdsInRequestOrder() throws IOException {
+        final var response = new MockHttpServletResponse();
+
+        controller.createOrders(request(IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> new Order(null, i % 2, "product " + i))
+                .toList()), response);
+
+        assertThat(response.getContentType()).isEqualTo(APPLICATION_NDJSON_VALUE);
+        assertThat(orders(response)).containsExactly(new Order(1, 1, "product 1"), new Order(2, 0, "product 2"),
+                new Order(3, 1, "product 3"), new Order(4, 0, "product 4"), new Order(5, 1, "product 5"));
+        assertThat(meterRegistry.get("repository.queries").tag("query", "OrderIngestion.insert").timer().count())
+                .isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from CustomerOrder", Long.class)).isEqualTo(5);
+    }
+
+
+    @Test
+    void turnsDownAnInvalidOrderKeepingTheBatchesAlreadyWritten() {
+        final var response = new MockHttpServletResponse();
+
+        assertThatThrownBy(() -> controller.createOrders(request(List.of(new Order(null, 1, "a"),
+                new Order(null, 1, "b"), new Order(null, 1, "c"), new Order(null, 1, null))), response))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid order.");
+        assertThat(jdbcTemplate.queryForList("select product_name from CustomerOrder order by id", String.class))
+                .containsExactly("a", "b");
+    }
+
+
+    @Test
+    void turnsDownTheOrdersOfACustomerOwnedByAnotherShard() {
+        final var ring = new HashRing(2, 128);
+        final var owned = IntStream.range(1, 100).filter(customerId -> ring.shardOf(customerId) == 0).findFirst()
+                .orElseThrow();
+        final var notOwned = IntStream.range(1, 100).filter(customerId -> ring.shardOf(customerId) == 1).findFirst()
+                .orElseThrow();
+        final var shard = controller(new ShardOwnership(0, 2, 128));
+
+        assertThatThrownBy(() -> shard.createOrders(request(List.of(new Order(null, owned, "a"),
+                new Order(null, notOwned, "b"))), new MockHttpServletResponse()))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(421));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from CustomerOrder", Long.class)).isZero();
+    }
+
+
+    @Test
+    void dropsTheCachedOrdersOfTheCustomersIngested() throws IOException {
+        customerOrdersCache.live(true);
+        IntStream.rangeClosed(1, 2).forEach(customerId -> customerOrdersCache.put(customerId,
+                customerOrdersCache.version(), new int[0], "[]".getBytes(StandardCharsets.UTF_8)));
+
+        controller.createOrders(request(List.of(new Order(null, 1, "a"))), new MockHttpServletResponse());
+
+        assertThat(customerOrdersCache.get(1)).isEmpty();
+        assertThat(customerOrdersCache.get(2)).isPresent();
+    }
+
+
+    private BlockingOrderIngestionController controller(ShardOwnership shardOwnership) {
+        return new BlockingOrderIngestionController(jdbcTemplate, new QueryMetrics(meterRegistry), customerOrdersCache,
+                shardOwnership, objectMapper, 2);
+    }
+
+
+    private MockHttpServletRequest request(List<Order> orders) {
+        final var request = new MockHttpServletRequest("POST", "/orders");
+        request.setContentType(APPLICATION_NDJSON_VALUE);
+        request.setContent(orders.stream()
+                .map(order -> {
+                    try {
+                        return objectMapper.writeValueAsString(order);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .collect(Collectors.joining("\n"))
+                .getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+
+    private List<Order> orders(MockHttpServletResponse response) throws IOException {
+        return objectMapper.readerFor(Order.class).<Order>readValues(response.getContentAsByteArray()).readAll();
+    }
+}
@@ -0,0 +1,327 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.viren.commons.BlockingDownstreamClients;
+import io.viren.commons.BlockingFaultInjectionFilter;
+import io.viren.commons.CustomizeBehavior;
+import io.viren.commons.QueryMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.DataClassRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+import static org.springframework.http.HttpStatusCode.valueOf;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
+/**
+ * The {@code blocking} build: the request/response and NDJSON endpoints of {@link OrderController} and
+ * {@link OrderIngestionController} on Spring MVC, one thread per request, JDBC instead of R2DBC against the same
+ * database and {@link RestTemplate} towards tracking-service. The caches and the tracking feed are the very same as on
+ * the reactive stack.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingConfiguration {
+
+    /**
+     * Spring Boot backs off its own as soon as there is an R2DBC connection factory.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource dataSource(@Value("${spring.datasource.url}") String url,
+                                @Value("${spring.datasource.username:sa}") String username) {
+        return DataSourceBuilder.create().type(HikariDataSource.class).url(url).username(username).build();
+    }
+}
+
+
+@RestController
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingOrderController {
+
+    private static final Logger LOG = getLogger(BlockingOrderController.class);
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingTrackingService trackingService;
+    private final QueryMetrics queryMetrics;
+    private final CustomerOrdersCache customerOrdersCache;
+    private final ObjectMapper objectMapper;
+
+
+    BlockingOrderController(JdbcTemplate jdbcTemplate, BlockingTrackingService trackingService,
+                            QueryMetrics queryMetrics, CustomerOrdersCache customerOrdersCache,
+                            ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.trackingService = trackingService;
+        this.queryMetrics = queryMetrics;
+        this.customerOrdersCache = customerOrdersCache;
+        this.objectMapper = objectMapper;
+    }
+
+
+    @GetMapping("/")
+    List<Order> getAllOrders(@RequestParam(defaultValue = "0") int after,
+                             @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(valueOf(400), "Supply valid page size.");
+        }
+        return queryMetrics.time("OrderRepository.findPage", () -> jdbcTemplate.query(
+                "select * from CustomerOrder where id > ? order by id limit ?",
+                new DataClassRowMapper<>(Order.class), after, size));
+    }
+
+
+    @GetMapping(value = "/customer-orders/{customer-id}", produces = APPLICATION_JSON_VALUE)
+    ResponseEntity<byte[]> getCustomerOrders(@PathVariable("customer-id") int customerId) {
+        final var cached = BlockingFaultInjectionFilter.current().isPresent()
+                ? Optional.<CustomerOrdersCache.CachedResponse>empty()
+                : customerOrdersCache.get(customerId);
+        final var response = cached.orElseGet(() -> {
+            final var version = customerOrdersCache.version();
+            final var orders = getOrders(customerId);
+            return customerOrdersCache.put(customerId, version,
+                    orders.stream().mapToInt(OrderOut::orderId).toArray(), serialize(orders));
+        });
+        return ResponseEntity.ok()
+                .eTag(response.etag())
+                .contentType(APPLICATION_JSON)
+                .body(response.body());
+    }
+
+
+    /**
+     * The orders of a customer as NDJSON, written once tracking of them all is known: JDBC and the tracking batches
+     * hand them over at once rather than one by one.
+     */
+    @GetMapping(value = "/customer-orders/{customer-id}", produces = APPLICATION_NDJSON_VALUE)
+    void streamCustomerOrders(@PathVariable("customer-id") int customerId, HttpServletResponse response)
+            throws IOException {
+        final var orders = getOrders(customerId);
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        final var out = response.getOutputStream();
+        for (var order : orders) {
+            out.write(objectMapper.writeValueAsBytes(order));
+            out.write('\n');
+        }
+    }
+
+
+    @GetMapping("/{order-id}")
+    List<Order> getOrderById(@PathVariable("order-id") int orderId) {
+        return queryMetrics.time("OrderRepository.findAllById", () -> jdbcTemplate.query(
+                "select * from CustomerOrder where id = ?", new DataClassRowMapper<>(Order.class), orderId));
+    }
+
+
+    /**
+     * A failed tracking lookup fails the request with the status tracking-service answered, as on the reactive stack.
+     */
+    private List<OrderOut> getOrders(int customerId) {
+        final var lines = queryMetrics.time("OrderRepository.findLinesByCustomerId", () -> jdbcTemplate.query(
+                "select id, product_name from CustomerOrder where customer_id = ?",
+                new DataClassRowMapper<>(OrderLine.class), customerId));
+        final Map<Integer, Tracking> trackings;
+        try {
+            trackings = trackingService.trackAll(lines.stream().map(OrderLine::id).toList());
+        } catch (HttpStatusCodeException e) {
+            LOG.error("Failed...!", e);
+            throw new ResponseStatusException(e.getStatusCode(), e.getResponseBodyAsString());
+        }
+        return lines.stream()
+                .map(line -> new OrderOut(line.id(), line.productName(), trackings.get(line.id())))
+                .toList();
+    }
+
+
+    private byte[] serialize(List<OrderOut> orders) {
+        try {
+            return objectMapper.writeValueAsBytes(orders);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(valueOf(500), "Failed to serialize orders.", e);
+        }
+    }
+}
+
+
+/**
+ * {@link OrderIngestionController} on Spring MVC: the NDJSON body is read one batch at a time, each batch inserted and
+ * its saved orders written back and flushed before the next one is read, so a client sending faster than the
+ * database writes is held back as on the reactive stack.
+ */
+@RestController
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingOrderIngestionController {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final QueryMetrics queryMetrics;
+    private final CustomerOrdersCache customerOrdersCache;
+    private final ShardOwnership shardOwnership;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+
+    BlockingOrderIngestionController(JdbcTemplate jdbcTemplate, QueryMetrics queryMetrics,
+                                     CustomerOrdersCache customerOrdersCache, ShardOwnership shardOwnership,
+                                     ObjectMapper objectMapper,
+                                     @Value("${orders.ingestion.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queryMetrics = queryMetrics;
+        this.customerOrdersCache = customerOrdersCache;
+        this.shardOwnership = shardOwnership;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * An invalid order, or one of a customer owned by another shard, fails the request keeping the batches already
+     * written, as on the reactive stack.
+     */
+    @PostMapping(value = "/orders", consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    void createOrders(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        final List<Order> batch = new ArrayList<>(batchSize);
+        try (MappingIterator<Order> orders = objectMapper.readerFor(Order.class)
+                .readValues(request.getInputStream())) {
+            while (orders.hasNextValue()) {
+                final Order order = orders.nextValue();
+                if (null == order.productName()) {
+                    throw new ResponseStatusException(valueOf(400), "Supply valid order.");
+                }
+                shardOwnership.checkOwned(order.customerId());
+                batch.add(order);
+                if (batch.size() == batchSize) {
+                    write(insert(batch), response);
+                    batch.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(valueOf(400), "Supply valid order.", e);
+        }
+        if (!batch.isEmpty()) {
+            write(insert(batch), response);
+        }
+    }
+
+
+    private List<Order> insert(List<Order> batch) {
+        final var saved = queryMetrics.time("OrderIngestion.insert", () -> jdbcTemplate.execute(
+                (ConnectionCallback<List<Order>>) connection -> {
+                    try (var statement = connection.prepareStatement(
+                            "insert into CustomerOrder (customer_id, product_name) values (?, ?)",
+                            new String[]{"id"})) {
+                        for (var order : batch) {
+                            statement.setInt(1, order.customerId());
+                            statement.setString(2, order.productName());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        final List<Order> orders = new ArrayList<>(batch.size());
+                        try (var ids = statement.getGeneratedKeys()) {
+                            for (var order : batch) {
+                                ids.next();
+                                orders.add(new Order(ids.getInt(1), order.customerId(), order.productName()));
+                            }
+                        }
+                        return orders;
+                    }
+                }));
+        saved.forEach(order -> customerOrdersCache.customerChanged(order.customerId()));
+        return saved;
+    }
+
+
+    private void write(List<Order> orders, HttpServletResponse response) throws IOException {
+        final var out = response.getOutputStream();
+        for (var order : orders) {
+            out.write(objectMapper.writeValueAsBytes(order));
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
+
+
+/**
+ * Tracking of many orders at once: cached ones from {@link TrackingCache}, the others with
+ * {@code /order-tracking/batch} calls of at most {@code tracking.service.batch.max-size} orders. Lookups with
+ * emulated behavior skip the cache, as on the reactive stack.
+ */
+@Component
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingTrackingService {
+
+    private final RestTemplate restTemplate;
+    private final TrackingCache trackingCache;
+    private final int maxBatchSize;
+
+
+    BlockingTrackingService(BlockingDownstreamClients downstreamClients,
+                            @Value("${tracking.service.base.url}") String trackingServiceBaseUrl,
+                            @Value("${tracking.service.batch.max-size:100}") int maxBatchSize,
+                            TrackingCache trackingCache) {
+        restTemplate = downstreamClients.restTemplate("tracking-service", trackingServiceBaseUrl);
+        this.trackingCache = trackingCache;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+
+    Map<Integer, Tracking> trackAll(List<Integer> orderIds) {
+        final var cacheable = BlockingFaultInjectionFilter.current().map(CustomizeBehavior::emulatesNothing)
+                .orElse(true);
+        final Map<Integer, Tracking> trackings = new HashMap<>();
+        final List<Integer> missing = new ArrayList<>();
+        for (var orderId : orderIds) {
+            final var cached = cacheable ? trackingCache.getIfPresent(orderId) : null;
+            if (null == cached) {
+                missing.add(orderId);
+            } else {
+                trackings.put(orderId, cached);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += maxBatchSize) {
+            final var batch = restTemplate.postForObject("/order-tracking/batch",
+                    missing.subList(from, Math.min(from + maxBatchSize, missing.size())), Tracking[].class);
+            for (var tracking : null == batch ? new Tracking[0] : batch) {
+                trackings.put(tracking.orderId(), tracking);
+                if (cacheable) {
+                    trackingCache.put(tracking);
+                }
+            }
+        }
+        return trackings;
+    }
+}
\ No newline at end of file
@@ -1,56 +1,104 @@
 package io.viren.orders;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import io.netty.channel.ConnectTimeoutException;
-import io.netty.handler.timeout.ReadTimeoutHandler;
-import io.netty.handler.timeout.TimeoutException;
-import io.netty.handler.timeout.WriteTimeoutHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.viren.commons.CustomizeBehavior;
+import io.viren.commons.DownstreamClients;
+import io.viren.commons.DownstreamMetricsFilter;
+import io.viren.commons.FaultInjectionPropagation;
+import io.viren.commons.HashRing;
+import io.viren.commons.QueryMetrics;
+import io.viren.commons.ResilienceFilter;
+import io.viren.commons.ResilienceFilters;
+import io.viren.commons.TimeoutFilter;
 import org.slf4j.Logger;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.CodecException;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.relational.core.mapping.Table;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.data.util.Pair;
 import org.springframework.http.HttpStatusCode;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.reactive.function.client.ClientRequest;
-import org.springframework.web.reactive.function.client.ClientResponse;
-import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
-import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.server.ResponseStatusException;
-import org.springframework.web.util.UriBuilder;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.SynchronousSink;
+import reactor.util.context.ContextView;
+import reactor.util.retry.Retry;
 
-import java.net.URI;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
-import static io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static com.fasterxml.jackson.annotation.JsonProperty.Access.WRITE_ONLY;
 import static org.slf4j.LoggerFactory.getLogger;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
 import static org.springframework.http.HttpStatusCode.valueOf;
-
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+
+/**
+ * Types that Jackson or the {@link Binder} reflect on outside of controller signatures, registered for AOT
+ * processing and native images.
+ */
 @SpringBootApplication
+@RegisterReflectionForBinding({Order.class, OrderLine.class, OrderOut.class, Tracking.class})
 public class OrdersApplication {
 
     public static void main(String[] args) {
@@ -58,8 +106,14 @@ public class OrdersApplication {
     }
 
 
+    /**
+     * Every shard holds the sample orders under the same ids, then moves on to its own block of ids: orders ingested
+     * by different shards never share an id, which tracking-service keys tracking by.
+     */
     @Bean
-    ApplicationRunner sampleDataInitializer(OrderRepository orderRepository) {
+    ApplicationRunner sampleDataInitializer(OrderRepository orderRepository, DatabaseClient databaseClient,
+                                            @Value("${orders.shard:0}") int shard,
+                                            @Value("${orders.ids.block-size:10000000}") int blockSize) {
         return args -> Flux.just(Pair.of(1, "10kg Fortune Wheat Flour"), Pair.of(2, "200g Emami Bath Soap"),
                         Pair.of(3, "2kg Safeda Mango"), Pair.of(4, "250g, Bru Coffee"),
                         Pair.of(4, "500g, Nirma Detergent"),
@@ -67,6 +121,10 @@ public class OrdersApplication {
                         Pair.of(6, "1kg Toor Dal"), Pair.of(7, "1/2kg Carrot"))
                 .map(pair -> new Order(null, pair.getFirst(), pair.getSecond()))
                 .concatMap(orderRepository::save)
+                .then(shard > 0
+                        ? databaseClient.sql("alter table CustomerOrder alter column id restart with "
+                                             + ((long) shard * blockSize + 1)).then()
+                        : Mono.empty())
                 .thenMany(orderRepository.findAll())
                 .subscribe();
 
@@ -76,60 +134,201 @@ public class OrdersApplication {
 
 
 @RestController
+@ConditionalOnWebApplication(type = REACTIVE)
 class OrderController {
-    OrderController(OrderRepository orderRepository, TrackingService trackingService) {
+    OrderController(OrderRepository orderRepository, TrackingService trackingService,
+                    TrackingEnrichment trackingEnrichment, QueryMetrics queryMetrics,
+                    CustomerOrdersCache customerOrdersCache, ObjectMapper objectMapper) {
         this.orderRepository = orderRepository;
         this.trackingService = trackingService;
+        this.trackingEnrichment = trackingEnrichment;
+        this.queryMetrics = queryMetrics;
+        this.customerOrdersCache = customerOrdersCache;
+        this.objectMapper = objectMapper;
     }
 
 
     private final OrderRepository orderRepository;
     private final TrackingService trackingService;
+    private final TrackingEnrichment trackingEnrichment;
+    private final QueryMetrics queryMetrics;
+    private final CustomerOrdersCache customerOrdersCache;
+    private final ObjectMapper objectMapper;
+    private static final int MAX_PAGE_SIZE = 1_000;
 
 
+    /**
+     * Keyset pagination: pass the last id of the previous page as {@code after} to get the next one.
+     */
     @GetMapping("/")
-    Flux<Order> getAllOrders() {
-        return orderRepository.findAll();
+    Flux<Order> getAllOrders(@RequestParam(defaultValue = "0") int after,
+                             @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Flux.error(new ResponseStatusException(valueOf(400), "Supply valid page size."));
+        }
+        return queryMetrics.time("OrderRepository.findPage", orderRepository.findPage(after, size));
     }
 
 
-    @GetMapping("/customer-orders/{customer-id}")
-    Flux<OrderOut> getCustomerOrders(@PathVariable("customer-id") int customerId,
-                                     @RequestParam(defaultValue = "tracking") String customizeBehaviorTargetApp,
-                                     @RequestParam(value = "emulateFailure", defaultValue = "no") String signal
-            , @RequestParam(value = "httpFailureCode", defaultValue = "500") String failureCode,
-                                     @RequestParam(value = "emulateDelay", defaultValue = "no") String delaySignal,
-                                     @RequestParam(value = "delayInMs", defaultValue = "0") String delayInMs) {
-        if (!customizeBehaviorTargetApp.equalsIgnoreCase("orders")) {
-            return getOrder(new CustomizeBehavior(signal, failureCode, delaySignal, delayInMs)).apply(customerId);
+    /**
+     * Served from {@link CustomerOrdersCache} while nothing it holds changed. The ETag lets pollers get a 304 instead
+     * of the body, unless they ask for emulated behavior, which always runs the whole chain.
+     */
+    @GetMapping(value = "/customer-orders/{customer-id}", produces = APPLICATION_JSON_VALUE)
+    Mono<ResponseEntity<byte[]>> getCustomerOrders(@PathVariable("customer-id") int customerId,
+                                                   @RequestHeader(value = "X-Request-Priority",
+                                                           defaultValue = "normal") String priority) {
+        return Mono.deferContextual(context -> {
+                    final var cached = context.hasKey(CustomizeBehavior.class)
+                            ? Optional.<CustomerOrdersCache.CachedResponse>empty()
+                            : customerOrdersCache.get(customerId);
+                    if (cached.isPresent()) {
+                        return Mono.just(cached.get());
+                    }
+                    final var version = customerOrdersCache.version();
+                    return getOrder(RequestPriority.of(priority)).apply(customerId)
+                            .collectList()
+                            .map(orders -> customerOrdersCache.put(customerId, version,
+                                    orders.stream().mapToInt(OrderOut::orderId).toArray(), serialize(orders)));
+                })
+                .map(response -> ResponseEntity.ok()
+                        .eTag(response.etag())
+                        .contentType(APPLICATION_JSON)
+                        .body(response.body()));
+    }
 
-        }
-        final var trackingOutFlux = Mono.just(delaySignal)
-                .filter(ds -> ds.equalsIgnoreCase("YES"))
-                .flatMapMany(i -> Mono.delay(Duration.ofMillis(Integer.parseInt(delayInMs)))
-                        .thenMany(getOrder(null).apply(customerId)))
-                .switchIfEmpty(Flux.defer(() -> getOrder(null).apply(customerId)));
 
-        return Mono.just(signal)
-                .filter(failureSignal -> failureSignal.equalsIgnoreCase("YES"))
-                .flatMap(s -> Mono.error(new ResponseStatusException(valueOf(Integer.parseInt(failureCode)),
-                        "failed on purpose at orders app.")))
-                .defaultIfEmpty("neglected")
-                .flatMapMany(s -> Flux.defer(() -> trackingOutFlux));
+    @GetMapping(value = "/customer-orders/{customer-id}", produces = APPLICATION_NDJSON_VALUE)
+    Flux<OrderOut> streamCustomerOrders(@PathVariable("customer-id") int customerId,
+                                        @RequestHeader(value = "X-Request-Priority", defaultValue = "normal")
+                                        String priority) {
+        return getOrder(RequestPriority.of(priority)).apply(customerId);
     }
 
 
-    Function<Integer, Flux<OrderOut>> getOrder(CustomizeBehavior customizeBehavior) {
-        return customerId -> orderRepository.findAlByCustomerId(customerId)
-                .flatMap(order -> trackingService.track(order.id(), customizeBehavior)
+    private byte[] serialize(List<OrderOut> orders) {
+        try {
+            return objectMapper.writeValueAsBytes(orders);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(valueOf(500), "Failed to serialize orders.", e);
+        }
+    }
+
+
+    Function<Integer, Flux<OrderOut>> getOrder(RequestPriority priority) {
+        return customerId -> trackingEnrichment.enrich(queryMetrics.time("OrderRepository.findLinesByCustomerId",
+                        orderRepository.findLinesByCustomerId(customerId)), priority,
+                order -> trackingService.track(order.id())
                         .map(tracking -> new OrderOut(order.id(), order.productName(), tracking))
+                        .defaultIfEmpty(new OrderOut(order.id(), order.productName(), null))
                         .onErrorContinue((error, object) -> getLogger(getClass()).error("Failed...!", error)));
     }
 
 
     @GetMapping("/{order-id}")
     Flux<Order> getOrderById(@PathVariable("order-id") int orderId) {
-        return orderRepository.findAllById(List.of(orderId));
+        return queryMetrics.time("OrderRepository.findAllById", orderRepository.findAllById(List.of(orderId)));
+    }
+}
+
+
+/**
+ * The customers this orders shard owns. Customers routes them over a {@link HashRing} of {@code orders.shards.count}
+ * shards, which is rebuilt here from the same settings, so both must be given the same count and virtual nodes.
+ */
+@Component
+class ShardOwnership {
+
+    private final int shard;
+    private final HashRing ring;
+
+
+    ShardOwnership(@Value("${orders.shard:0}") int shard, @Value("${orders.shards.count:1}") int count,
+                   @Value("${orders.shards.virtual-nodes:128}") int virtualNodes) {
+        if (shard < 0 || shard >= count) {
+            throw new IllegalArgumentException("orders.shard " + shard + " is not one of the " + count + " shards");
+        }
+        this.shard = shard;
+        this.ring = new HashRing(count, virtualNodes);
+    }
+
+
+    /**
+     * Fails with 421 Misdirected Request for a customer owned by another shard, whose orders written here would never
+     * be read.
+     */
+    void checkOwned(int customerId) {
+        final var owner = ring.shardOf(customerId);
+        if (owner != shard) {
+            throw new ResponseStatusException(valueOf(421),
+                    "Customer " + customerId + " is owned by orders shard " + owner + ", not " + shard + ".");
+        }
+    }
+}
+
+
+@RestController
+@ConditionalOnWebApplication(type = REACTIVE)
+class OrderIngestionController {
+
+    private final DatabaseClient databaseClient;
+    private final QueryMetrics queryMetrics;
+    private final CustomerOrdersCache customerOrdersCache;
+    private final ShardOwnership shardOwnership;
+    private final int batchSize;
+
+
+    OrderIngestionController(DatabaseClient databaseClient, QueryMetrics queryMetrics,
+                             CustomerOrdersCache customerOrdersCache, ShardOwnership shardOwnership,
+                             @Value("${orders.ingestion.batch-size:500}") int batchSize) {
+        this.databaseClient = databaseClient;
+        this.queryMetrics = queryMetrics;
+        this.customerOrdersCache = customerOrdersCache;
+        this.shardOwnership = shardOwnership;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Bulk load of orders sent as NDJSON. Orders are inserted one multi-row batch at a time, so a client sending
+     * faster than the database writes is held back by TCP backpressure. Saved orders stream back in request order
+     * with their generated ids. An order of a customer owned by another shard is turned down like an invalid one.
+     */
+    @PostMapping(value = "/orders", consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    Flux<Order> createOrders(@RequestBody Flux<Order> orders) {
+        return orders.handle((Order order, SynchronousSink<Order> sink) -> {
+                    if (null == order.productName()) {
+                        sink.error(new ResponseStatusException(valueOf(400), "Supply valid order."));
+                    } else {
+                        shardOwnership.checkOwned(order.customerId());
+                        sink.next(order);
+                    }
+                })
+                .buffer(batchSize)
+                .concatMap(batch -> queryMetrics.time("OrderIngestion.insert", insert(batch)), 1)
+                .doOnNext(order -> customerOrdersCache.customerChanged(order.customerId()));
+    }
+
+
+    private Flux<Order> insert(List<Order> batch) {
+        return databaseClient.inConnectionMany(connection -> {
+            final var statement = connection
+                    .createStatement("insert into CustomerOrder (customer_id, product_name) values ($1, $2)")
+                    .returnGeneratedValues("id");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                statement.bind(0, batch.get(i).customerId()).bind(1, batch.get(i).productName());
+            }
+            final var index = new AtomicInteger();
+            return Flux.from(statement.execute())
+                    .concatMap(result -> result.map((row, metadata) -> row.get("id", Integer.class)))
+                    .map(id -> {
+                        final var order = batch.get(index.getAndIncrement());
+                        return new Order(id, order.customerId(), order.productName());
+                    });
+        });
     }
 }
 
@@ -139,24 +338,95 @@ record Order(@Id Integer id, int customerId, String productName) {
 }
 
 
+/**
+ * Projection of {@link Order} holding only what {@link OrderOut} needs.
+ */
+record OrderLine(Integer id, String productName) {
+}
+
+
+/**
+ * Without tracking when there is none: customers passes these bytes through as they are.
+ */
+@JsonInclude(NON_NULL)
 record OrderOut(Integer orderId, String productName, Tracking tracking) {
 }
 
 
 @JsonInclude(NON_NULL)
-record Tracking(@JsonIgnore Integer orderId, Integer trackingId, @JsonProperty("partner") String deliveryPartner,
-                @JsonProperty("status") String deliveryStatus,
+record Tracking(@JsonProperty(access = WRITE_ONLY) Integer orderId, Integer trackingId,
+                @JsonProperty("partner") String deliveryPartner, @JsonProperty("status") String deliveryStatus,
                 LocalDate tentativeDeliveryDate) {
 }
 
 
-record CustomizeBehavior(String emulateFailure, String httpFailureCode, String emulateDelay, String delayInMs) {
+enum RequestPriority {
+    HIGH, NORMAL, LOW;
+
+
+    static RequestPriority of(String value) {
+        return Arrays.stream(values())
+                .filter(priority -> priority.name().equalsIgnoreCase(value))
+                .findFirst()
+                .orElse(NORMAL);
+    }
+}
+
+
+/**
+ * Bounds how many tracking lookups a single request keeps in flight, per {@link RequestPriority}, so one large
+ * customer cannot take over the tracking-service connection pool. In ordered mode orders are emitted in
+ * repository order ({@code flatMapSequential}) at the cost of buffering the early completions.
+ */
+@Component
+class TrackingEnrichment {
+
+    private final Map<RequestPriority, Integer> concurrency = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, AtomicInteger> inFlight = new EnumMap<>(RequestPriority.class);
+    private final int prefetch;
+    private final boolean ordered;
+
+
+    TrackingEnrichment(MeterRegistry meterRegistry,
+                       @Value("${tracking.enrichment.concurrency.high:100}") int highPriorityConcurrency,
+                       @Value("${tracking.enrichment.concurrency.normal:64}") int normalPriorityConcurrency,
+                       @Value("${tracking.enrichment.concurrency.low:16}") int lowPriorityConcurrency,
+                       @Value("${tracking.enrichment.prefetch:32}") int prefetch,
+                       @Value("${tracking.enrichment.ordered:false}") boolean ordered) {
+        concurrency.put(RequestPriority.HIGH, highPriorityConcurrency);
+        concurrency.put(RequestPriority.NORMAL, normalPriorityConcurrency);
+        concurrency.put(RequestPriority.LOW, lowPriorityConcurrency);
+        this.prefetch = prefetch;
+        this.ordered = ordered;
+        for (var priority : RequestPriority.values()) {
+            inFlight.put(priority, meterRegistry.gauge("orders.tracking.in-flight",
+                    Tags.of("priority", priority.name().toLowerCase()), new AtomicInteger()));
+        }
+    }
+
+
+    <T, R> Flux<R> enrich(Flux<T> source, RequestPriority priority, Function<T, Mono<R>> enricher) {
+        final var counter = inFlight.get(priority);
+        final Function<T, Mono<R>> counted = item -> Mono.defer(() -> {
+                    counter.incrementAndGet();
+                    return enricher.apply(item);
+                })
+                .doFinally(signal -> counter.decrementAndGet());
+        return ordered
+                ? source.flatMapSequential(counted, concurrency.get(priority), prefetch)
+                : source.flatMap(counted, concurrency.get(priority), prefetch);
+    }
 }
 
 
 interface OrderRepository extends ReactiveCrudRepository<Order, Integer> {
 
-    Flux<Order> findAlByCustomerId(int customerId);
+    @Query("select id, product_name from CustomerOrder where customer_id = :customerId")
+    Flux<OrderLine> findLinesByCustomerId(int customerId);
+
+
+    @Query("select * from CustomerOrder where id > :after order by id limit :size")
+    Flux<Order> findPage(int after, int size);
 }
 
 
@@ -164,59 +434,464 @@ interface OrderRepository extends ReactiveCrudRepository<Order, Integer> {
 class TrackingService {
 
     private final WebClient webClient;
-    private static final Integer timeoutInMilliseconds = 10_000;
+    private final TrackingBatcher batcher;
+    private final TrackingCache trackingCache;
+    private final MediaType accept;
+    private static final MediaType APPLICATION_STREAM_SMILE =
+            MediaType.parseMediaType("application/stream+x-jackson-smile");
     private static final Logger LOG = getLogger(TrackingService.class);
 
 
     TrackingService(WebClient.Builder webClientBuilder,
-                    @Value("${tracking.service.base.url}") String trackingServiceBaseUrl) {
-        final var connector = new ReactorClientHttpConnector(HttpClient.create()
-                .option(CONNECT_TIMEOUT_MILLIS, timeoutInMilliseconds)
-                .doOnConnected(conn -> conn.addHandlerLast(new ReadTimeoutHandler(timeoutInMilliseconds, MILLISECONDS))
-                        .addHandlerLast(new WriteTimeoutHandler(timeoutInMilliseconds, MILLISECONDS)))
-                .compress(true));
+                    @Value("${tracking.service.base.url}") String trackingServiceBaseUrl,
+                    @Value("${tracking.service.batch.window-ms:5}") long batchWindowInMs,
+                    @Value("${tracking.service.batch.max-size:100}") int maxBatchSize,
+                    @Value("${tracking.service.codec:json}") String codec,
+                    TrackingCache trackingCache, DownstreamClients downstreamClients,
+                    ResilienceFilters resilienceFilters, MeterRegistry meterRegistry) {
         webClient = webClientBuilder.baseUrl(trackingServiceBaseUrl)
-                .clientConnector(connector)
+                .clientConnector(downstreamClients.connector("tracking-service"))
+                .filter(new DownstreamMetricsFilter(meterRegistry, "tracking-service"))
+                .filter(resilienceFilters.forTarget("tracking-service"))
                 .filter(new TimeoutFilter())
+                .filter(new FaultInjectionPropagation())
                 .build();
+        batcher = new TrackingBatcher(this::trackAll, Duration.ofMillis(batchWindowInMs), maxBatchSize);
+        this.trackingCache = trackingCache;
+        accept = "smile".equalsIgnoreCase(codec) ? APPLICATION_STREAM_SMILE : APPLICATION_JSON;
     }
 
 
-    Mono<Tracking> track(Integer orderId, CustomizeBehavior customizeBehavior) {
-        Function<UriBuilder, URI> uriBuilder =
-                builder -> builder.path("/order-tracking/{orderId}")
-                        .build(orderId);
-        if (null != customizeBehavior) {
-            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
-            map.add("emulateFailure", customizeBehavior.emulateFailure());
-            map.add("httpFailureCode", customizeBehavior.httpFailureCode());
-            map.add("emulateDelay", customizeBehavior.emulateDelay());
-            map.add("delayInMs", customizeBehavior.delayInMs());
-            uriBuilder = builder -> builder.path("/order-tracking/{orderId}")
-                    .queryParams(map)
-                    .build(orderId);
-        }
-        return webClient.get()
-                .uri(uriBuilder)
+    /**
+     * Looks up tracking of a single order. Lookups issued concurrently with the same behavior are coalesced
+     * into one {@code /order-tracking/batch} call. Only lookups without emulated behavior are served from cache.
+     */
+    Mono<Tracking> track(Integer orderId) {
+        return Mono.deferContextual(context -> {
+            final CustomizeBehavior customizeBehavior = context.getOrDefault(CustomizeBehavior.class, null);
+            if (null == customizeBehavior || customizeBehavior.emulatesNothing()) {
+                return trackingCache.get(orderId, id -> batcher.track(id, null));
+            }
+            return batcher.track(orderId, customizeBehavior);
+        });
+    }
+
+
+    /**
+     * With {@code tracking.service.codec=smile} the answer comes as binary Smile instead of JSON, which is cheaper to
+     * produce and to parse.
+     */
+    Flux<Tracking> trackAll(Collection<Integer> orderIds, CustomizeBehavior customizeBehavior) {
+        return webClient.post()
+                .uri("/order-tracking/batch")
+                .attribute(ResilienceFilter.IDEMPOTENT, true)
+                .accept(accept)
+                .bodyValue(orderIds)
                 .retrieve()
                 .onStatus(HttpStatusCode::isError,
                         response -> response.bodyToMono(String.class)
                                 .flatMap(body -> Mono.error(new ResponseStatusException(response.statusCode(), body))))
-                .bodyToMono(Tracking.class)
-                .doOnError(error -> LOG.error(error.getMessage(), error));
+                .bodyToFlux(Tracking.class)
+                .doOnError(error -> LOG.error(error.getMessage(), error))
+                .contextWrite(context -> null == customizeBehavior
+                        ? context.delete(CustomizeBehavior.class)
+                        : context.put(CustomizeBehavior.class, customizeBehavior));
+    }
+}
+
+
+/**
+ * Serialized {@code /customer-orders} JSON responses with their strong ETag, bounded by
+ * {@code response.cache.max-bytes}. Every change to an order (its tracking, pushed by {@link TrackingFeed}) or to the
+ * orders of a customer (ingestion) takes the next sequence number, kept as a stamp in a striped array. A response
+ * computed at sequence {@code version} stays valid as long as none of its stamps moved past it and the tracking feed
+ * was live all along, so checking it costs no query and no downstream call.
+ */
+@Component
+class CustomerOrdersCache {
+
+    private static final int STRIPES = 8192;
 
+    private final Cache<Integer, CachedResponse> cache;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray orderStamps = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray customerStamps = new AtomicLongArray(STRIPES);
+    private volatile long liveSince = Long.MAX_VALUE;
+
+
+    CustomerOrdersCache(MeterRegistry meterRegistry,
+                        @Value("${response.cache.max-bytes:67108864}") long maxBytes) {
+        cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Integer customerId, CachedResponse response) -> response.body().length)
+                .recordStats()
+                .build(), "customer-orders");
+    }
+
+
+    record CachedResponse(int customerId, long version, int[] orderIds, byte[] body, String etag) {
+    }
+
+
+    /**
+     * To be read before computing a response, then handed to {@link #put(int, long, int[], byte[])}.
+     */
+    long version() {
+        return sequence.get();
+    }
+
+
+    Optional<CachedResponse> get(int customerId) {
+        return Optional.ofNullable(cache.getIfPresent(customerId)).filter(this::isCurrent);
+    }
+
+
+    CachedResponse put(int customerId, long version, int[] orderIds, byte[] body) {
+        final var response = new CachedResponse(customerId, version, orderIds, body,
+                "\"" + DigestUtils.md5DigestAsHex(body) + "\"");
+        if (isCurrent(response)) {
+            cache.put(customerId, response);
+        }
+        return response;
+    }
+
+
+    /**
+     * To be called once the change is visible to readers, so a response computed after the stamp sees it.
+     */
+    void orderChanged(int orderId) {
+        stamp(orderStamps, orderId);
+    }
+
+
+    void customerChanged(int customerId) {
+        stamp(customerStamps, customerId);
+    }
+
+
+    void live(boolean live) {
+        liveSince = live ? sequence.incrementAndGet() : Long.MAX_VALUE;
+        if (!live) {
+            cache.invalidateAll();
+        }
+    }
+
+
+    private boolean isCurrent(CachedResponse response) {
+        if (response.version() < liveSince
+            || customerStamps.get(stripe(response.customerId())) > response.version()) {
+            return false;
+        }
+        for (var orderId : response.orderIds()) {
+            if (orderStamps.get(stripe(orderId)) > response.version()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void stamp(AtomicLongArray stamps, int id) {
+        stamps.accumulateAndGet(stripe(id), sequence.incrementAndGet(), Math::max);
+    }
+
+
+    private static int stripe(int id) {
+        return Math.floorMod(id, STRIPES);
+    }
+}
+
+
+/**
+ * Size bounded tracking cache keyed by order id. Entries live for a TTL picked by delivery status, or for the longer
+ * {@code tracking.cache.ttl.live} while {@link TrackingFeed} keeps them current, and concurrent misses for the same
+ * order share a single upstream lookup.
+ */
+@Component
+class TrackingCache {
+
+    private final AsyncCache<Integer, Tracking> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean live;
+
+
+    TrackingCache(MeterRegistry meterRegistry,
+                  @Value("${tracking.cache.max-size:10000}") long maxSize,
+                  @Value("${tracking.cache.ttl.delivered:PT1H}") Duration deliveredTtl,
+                  @Value("${tracking.cache.ttl.default:PT30S}") Duration defaultTtl,
+                  @Value("${tracking.cache.ttl.live:PT10M}") Duration liveTtl) {
+        cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Integer, Tracking>() {
+                    @Override
+                    public long expireAfterCreate(Integer orderId, Tracking tracking, long currentTime) {
+                        if (live) {
+                            return liveTtl.toNanos();
+                        }
+                        return ("DELIVERED".equals(tracking.deliveryStatus()) ? deliveredTtl : defaultTtl).toNanos();
+                    }
+
+
+                    @Override
+                    public long expireAfterUpdate(Integer orderId, Tracking tracking, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(orderId, tracking, currentTime);
+                    }
+
+
+                    @Override
+                    public long expireAfterRead(Integer orderId, Tracking tracking, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync(), "tracking");
+    }
+
+
+    /**
+     * A lookup that started before the feed went live may return tracking older than the changes pushed since, so
+     * it is answered but not kept.
+     */
+    Mono<Tracking> get(Integer orderId, Function<Integer, Mono<Tracking>> loader) {
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> cache.get(orderId, (id, executor) -> {
+            final var started = generation.get();
+            final var lookup = loader.apply(id).contextWrite(context).toFuture();
+            lookup.thenRun(() -> {
+                if (started != generation.get()) {
+                    cache.asMap().remove(id, lookup);
+                }
+            });
+            return lookup;
+        }), true));
+    }
+
+
+    /**
+     * Without loading on a miss.
+     */
+    Tracking getIfPresent(Integer orderId) {
+        final var tracking = cache.getIfPresent(orderId);
+        return null == tracking ? null : tracking.getNow(null);
+    }
+
+
+    void put(Tracking tracking) {
+        cache.put(tracking.orderId(), CompletableFuture.completedFuture(tracking));
+    }
+
+
+    /**
+     * While live, every change is pushed through {@link #put(Tracking)}, so entries only expire after the safety TTL
+     * in case a change got lost anyway. Once the push stops, changes may be missed and the cached entries are
+     * dropped.
+     */
+    void live(boolean live) {
+        this.live = live;
+        generation.incrementAndGet();
+        if (!live) {
+            cache.synchronous().invalidateAll();
+        }
     }
 }
 
 
-class TimeoutFilter implements ExchangeFilterFunction {
+/**
+ * Subscribes to the tracking changes streamed by tracking-service and applies them to {@link TrackingCache}, making
+ * it a view of tracking kept up to date by push. Lookups only reach tracking-service on a miss. The stream is
+ * reconnected with backoff when it drops.
+ */
+@Component
+@ConditionalOnProperty(name = "tracking.feed.enabled", havingValue = "true", matchIfMissing = true)
+class TrackingFeed implements SmartLifecycle {
+
+    private static final Logger LOG = getLogger(TrackingFeed.class);
+
+    /**
+     * Resolved without an anonymous subclass, whose generic signature a native image would not keep.
+     */
+    private static final ParameterizedTypeReference<ServerSentEvent<Tracking>> TRACKING_EVENTS =
+            ParameterizedTypeReference.forType(ResolvableType.forClassWithGenerics(ServerSentEvent.class, Tracking.class)
+                    .getType());
+
+    private final WebClient webClient;
+    private final TrackingCache trackingCache;
+    private final CustomerOrdersCache customerOrdersCache;
+    private final Duration reconnectBackoff;
+    private final Counter changes;
+    private final AtomicBoolean connected = new AtomicBoolean();
+    private volatile Disposable subscription;
+
+
+    TrackingFeed(WebClient.Builder webClientBuilder,
+                 @Value("${tracking.service.base.url}") String trackingServiceBaseUrl,
+                 @Value("${tracking.feed.reconnect-backoff:PT1S}") Duration reconnectBackoff,
+                 DownstreamClients downstreamClients, TrackingCache trackingCache,
+                 CustomerOrdersCache customerOrdersCache, MeterRegistry meterRegistry) {
+        webClient = webClientBuilder.baseUrl(trackingServiceBaseUrl)
+                .clientConnector(downstreamClients.connector("tracking-service"))
+                .build();
+        this.trackingCache = trackingCache;
+        this.customerOrdersCache = customerOrdersCache;
+        this.reconnectBackoff = reconnectBackoff;
+        changes = meterRegistry.counter("tracking.feed.changes");
+        Gauge.builder("tracking.feed.connected", connected, value -> value.get() ? 1 : 0).register(meterRegistry);
+    }
+
+
+    @Override
+    public void start() {
+        subscription = webClient.get()
+                .uri("/order-tracking/changes")
+                .accept(TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(TRACKING_EVENTS)
+                .doOnNext(event -> {
+                    connected(true);
+                    if (null != event.data()) {
+                        changes.increment();
+                        trackingCache.put(event.data());
+                        customerOrdersCache.orderChanged(event.data().orderId());
+                    }
+                })
+                .doOnError(error -> LOG.warn("Tracking feed dropped: {}", error.getMessage()))
+                .doOnTerminate(() -> connected(false))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectBackoff)
+                        .maxBackoff(reconnectBackoff.multipliedBy(30))
+                        .transientErrors(true))
+                .repeatWhen(completions -> completions.delayElements(reconnectBackoff))
+                .subscribe();
+    }
+
+
+    @Override
+    public void stop() {
+        subscription.dispose();
+        connected(false);
+    }
+
 
     @Override
-    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
-        return next.exchange(request)
-                .onErrorMap(error -> error instanceof WebClientRequestException ||
-                                     error instanceof ConnectTimeoutException || error instanceof TimeoutException,
-                        error -> new ResponseStatusException(HttpStatusCode.valueOf(408)));
+    public boolean isRunning() {
+        return null != subscription && !subscription.isDisposed();
+    }
+
 
+    private void connected(boolean value) {
+        if (connected.compareAndSet(!value, value)) {
+            trackingCache.live(value);
+            customerOrdersCache.live(value);
+        }
     }
 }
+
+
+/**
+ * Collects order ids asked for within a short window (or until the batch is full) and resolves them with a
+ * single downstream call. Ids are grouped by {@link CustomizeBehavior} since it travels as query params of the
+ * batch call.
+ */
+class TrackingBatcher {
+
+    private final BiFunction<Collection<Integer>, CustomizeBehavior, Flux<Tracking>> batchCall;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Map<CustomizeBehavior, PendingBatch> pending = new HashMap<>();
+
+
+    TrackingBatcher(BiFunction<Collection<Integer>, CustomizeBehavior, Flux<Tracking>> batchCall, Duration window,
+                    int maxBatchSize) {
+        this.batchCall = batchCall;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+
+    Mono<Tracking> track(Integer orderId, CustomizeBehavior customizeBehavior) {
+        return Mono.deferContextual(context -> {
+            final Sinks.One<Tracking> sink;
+            PendingBatch full = null;
+            synchronized (pending) {
+                var batch = pending.get(customizeBehavior);
+                if (null == batch) {
+                    final var opened = new PendingBatch(context, new LinkedHashMap<>());
+                    pending.put(customizeBehavior, opened);
+                    batch = opened;
+                    Mono.delay(window).subscribe(tick -> flush(customizeBehavior, opened));
+                }
+                sink = batch.waiters().computeIfAbsent(orderId, id -> Sinks.one());
+                if (batch.waiters().size() >= maxBatchSize) {
+                    pending.remove(customizeBehavior);
+                    full = batch;
+                }
+            }
+            if (null != full) {
+                dispatch(full, customizeBehavior);
+            }
+            return sink.asMono();
+        });
+    }
+
+
+    private void flush(CustomizeBehavior customizeBehavior, PendingBatch batch) {
+        synchronized (pending) {
+            if (pending.get(customizeBehavior) != batch) {
+                return;
+            }
+            pending.remove(customizeBehavior);
+        }
+        dispatch(batch, customizeBehavior);
+    }
+
+
+    /**
+     * The batch call runs in the Reactor context of the request that opened the batch, so it is traced as part of
+     * that request. When it fails part way, the waiters it answered keep their tracking and the others are looked up
+     * one by one, so one order that tracking-service chokes on fails only its own waiter.
+     */
+    private void dispatch(PendingBatch batch, CustomizeBehavior customizeBehavior) {
+        final var waiters = batch.waiters();
+        final Map<Integer, Tracking> received = new HashMap<>();
+        batchCall.apply(List.copyOf(waiters.keySet()), customizeBehavior)
+                .contextWrite(batch.context())
+                .subscribe(tracking -> received.put(tracking.orderId(), tracking),
+                        error -> waiters.forEach((orderId, sink) -> {
+                            if (received.containsKey(orderId)) {
+                                sink.tryEmitValue(received.get(orderId));
+                            } else if (waiters.size() > 1 && mayBeOneOrder(error)) {
+                                batchCall.apply(List.of(orderId), customizeBehavior)
+                                        .next()
+                                        .contextWrite(batch.context())
+                                        .subscribe(sink::tryEmitValue, sink::tryEmitError, sink::tryEmitEmpty);
+                            } else {
+                                sink.tryEmitError(error);
+                            }
+                        }),
+                        () -> waiters.forEach((orderId, sink) -> {
+                            final var tracking = received.get(orderId);
+                            if (null == tracking) {
+                                sink.tryEmitEmpty();
+                            } else {
+                                sink.tryEmitValue(tracking);
+                            }
+                        }));
+    }
+
+
+    /**
+     * Rather than tracking-service being unavailable, overloaded or slow, which looking the orders up one by one
+     * would only make worse.
+     */
+    private static boolean mayBeOneOrder(Throwable error) {
+        if (error instanceof ResponseStatusException e) {
+            final var status = e.getStatusCode().value();
+            return status != 408 && status != 429 && status != 503;
+        }
+        return error instanceof CodecException;
+    }
+
+
+    private record PendingBatch(ContextView context, Map<Integer, Sinks.One<Tracking>> waiters) {
+    }
+}
\ No newline at end of file
@@ -4,3 +4,5 @@ create table CustomerOrder
     customer_id int not null,
     product_name varchar(255) not null
 );
+
+create index if not exists customer_order_customer_id on CustomerOrder (customer_id);
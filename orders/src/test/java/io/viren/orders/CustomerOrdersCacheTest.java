@@ -0,0 +1,87 @@
+package io.viren.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerOrdersCacheTest {
+
+    private static final byte[] BODY = "[]".getBytes(StandardCharsets.UTF_8);
+
+    private final CustomerOrdersCache cache = new CustomerOrdersCache(new SimpleMeterRegistry(), 1 << 20);
+
+
+    @Test
+    void cachesNothingUntilTheTrackingFeedIsLive() {
+        cache.put(1, cache.version(), new int[]{10}, BODY);
+        assertThat(cache.get(1)).isEmpty();
+
+        cache.live(true);
+        final var response = cache.put(1, cache.version(), new int[]{10}, BODY);
+
+        assertThat(cache.get(1)).containsSame(response);
+        assertThat(response.etag()).startsWith("\"").endsWith("\"");
+    }
+
+
+    @Test
+    void dropsResponsesComputedBeforeTheFeedWentLive() {
+        final var version = cache.version();
+        cache.live(true);
+
+        cache.put(1, version, new int[]{10}, BODY);
+
+        assertThat(cache.get(1)).isEmpty();
+    }
+
+
+    @Test
+    void dropsResponsesOnceOneOfTheirOrdersChanged() {
+        cache.live(true);
+        cache.put(1, cache.version(), new int[]{10, 11}, BODY);
+        cache.put(2, cache.version(), new int[]{20}, BODY);
+
+        cache.orderChanged(11);
+
+        assertThat(cache.get(1)).isEmpty();
+        assertThat(cache.get(2)).isPresent();
+    }
+
+
+    @Test
+    void dropsResponsesOnceTheCustomerGotAnOrder() {
+        cache.live(true);
+        cache.put(1, cache.version(), new int[]{10}, BODY);
+
+        cache.customerChanged(1);
+
+        assertThat(cache.get(1)).isEmpty();
+    }
+
+
+    @Test
+    void doesNotCacheWhatChangedWhileItWasComputed() {
+        cache.live(true);
+        final var version = cache.version();
+        cache.orderChanged(10);
+
+        cache.put(1, version, new int[]{10}, BODY);
+
+        assertThat(cache.get(1)).isEmpty();
+    }
+
+
+    @Test
+    void forgetsEverythingWhenTheFeedDrops() {
+        cache.live(true);
+        cache.put(1, cache.version(), new int[]{10}, BODY);
+
+        cache.live(false);
+        cache.live(true);
+
+        assertThat(cache.get(1)).isEmpty();
+    }
+}
@@ -0,0 +1,45 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderControllerTest {
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderController controller = new OrderController(orderRepository, null, null,
+            new QueryMetrics(meterRegistry), new CustomerOrdersCache(meterRegistry, 1 << 20), new ObjectMapper());
+
+
+    @Test
+    void turnsDownPageSizesOutOfRangeWithoutQuerying() {
+        StepVerifier.create(controller.getAllOrders(0, 0))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid page size."))
+                .verify();
+        StepVerifier.create(controller.getAllOrders(0, 1_001))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid page size."))
+                .verify();
+        verify(orderRepository, never()).findPage(anyInt(), anyInt());
+    }
+
+
+    @Test
+    void readsThePageAfterTheLastIdSeen() {
+        when(orderRepository.findPage(2, 2)).thenReturn(Flux.just(new Order(4, 1, "d"), new Order(5, 2, "e")));
+
+        StepVerifier.create(controller.getAllOrders(2, 2).map(Order::id))
+                .expectNext(4, 5)
+                .verifyComplete();
+    }
+}
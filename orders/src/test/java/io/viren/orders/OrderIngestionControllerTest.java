@@ -0,0 +1,113 @@
+package io.viren.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.viren.commons.HashRing;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderIngestionControllerTest {
+
+    private final DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(
+            "r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CustomerOrdersCache customerOrdersCache = new CustomerOrdersCache(meterRegistry, 1 << 20);
+    private final OrderIngestionController controller = new OrderIngestionController(databaseClient,
+            new QueryMetrics(meterRegistry), customerOrdersCache, new ShardOwnership(0, 1, 128), 2);
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Flux.fromArray(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .concatMap(statement -> databaseClient.sql(statement).then())
+                .blockLast();
+    }
+
+
+    @Test
+    void insertsInBatchesAndAnswersTheOrdersWithTheirIdsInRequestOrder() {
+        final var orders = Flux.range(1, 5).map(i -> new Order(null, i % 2, "product " + i));
+
+        StepVerifier.create(controller.createOrders(orders))
+                .expectNext(new Order(1, 1, "product 1"), new Order(2, 0, "product 2"), new Order(3, 1, "product 3"),
+                        new Order(4, 0, "product 4"), new Order(5, 1, "product 5"))
+                .verifyComplete();
+        assertThat(meterRegistry.get("repository.queries").tag("query", "OrderIngestion.insert").timer().count())
+                .isEqualTo(3);
+        StepVerifier.create(databaseClient.sql("select count(*) from CustomerOrder")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .expectNext(5L)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void turnsDownAnInvalidOrderKeepingTheBatchesAlreadyWritten() {
+        final var orders = Flux.just(new Order(null, 1, "a"), new Order(null, 1, "b"), new Order(null, 1, "c"),
+                new Order(null, 1, null));
+
+        StepVerifier.create(controller.createOrders(orders).map(Order::productName))
+                .expectNext("a", "b")
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOf(ResponseStatusException.class)
+                        .hasMessageContaining("Supply valid order."))
+                .verify();
+        StepVerifier.create(databaseClient.sql("select product_name from CustomerOrder order by id")
+                        .map(row -> row.get(0, String.class))
+                        .all())
+                .expectNext("a", "b")
+                .verifyComplete();
+    }
+
+
+    @Test
+    void turnsDownTheOrdersOfACustomerOwnedByAnotherShard() {
+        final var ring = new HashRing(2, 128);
+        final var owned = IntStream.range(1, 100).filter(customerId -> ring.shardOf(customerId) == 0).findFirst()
+                .orElseThrow();
+        final var notOwned = IntStream.range(1, 100).filter(customerId -> ring.shardOf(customerId) == 1).findFirst()
+                .orElseThrow();
+        final var shard = new OrderIngestionController(databaseClient, new QueryMetrics(meterRegistry),
+                customerOrdersCache, new ShardOwnership(0, 2, 128), 2);
+
+        StepVerifier.create(shard.createOrders(Flux.just(new Order(null, owned, "a"), new Order(null, notOwned, "b")))
+                        .map(Order::productName))
+                .expectErrorSatisfies(error -> assertThat(error).isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(421)))
+                .verify();
+        StepVerifier.create(databaseClient.sql("select count(*) from CustomerOrder")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void dropsTheCachedOrdersOfTheCustomersIngested() {
+        customerOrdersCache.live(true);
+        IntStream.rangeClosed(1, 2).forEach(customerId -> customerOrdersCache.put(customerId,
+                customerOrdersCache.version(), new int[0], "[]".getBytes(StandardCharsets.UTF_8)));
+
+        StepVerifier.create(controller.createOrders(Flux.just(new Order(null, 1, "a"))))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertThat(customerOrdersCache.get(1)).isEmpty();
+        assertThat(customerOrdersCache.get(2)).isPresent();
+    }
+}
@@ -0,0 +1,29 @@
+package io.viren.orders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderOutTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+
+    @Test
+    void leavesOutMissingTracking() throws Exception {
+        assertThat(objectMapper.writeValueAsString(new OrderOut(1, "250g Tata Tea", null)))
+                .isEqualTo("{\"orderId\":1,\"productName\":\"250g Tata Tea\"}");
+    }
+
+
+    @Test
+    void keepsTrackingThatIsThere() throws Exception {
+        final var tracking = objectMapper.readValue("{\"trackingId\":3,\"partner\":\"DHL\",\"status\":\"DELIVERED\"}",
+                Tracking.class);
+
+        assertThat(objectMapper.writeValueAsString(new OrderOut(1, "250g Tata Tea", tracking)))
+                .isEqualTo("{\"orderId\":1,\"productName\":\"250g Tata Tea\","
+                           + "\"tracking\":{\"partner\":\"DHL\",\"status\":\"DELIVERED\",\"trackingId\":3}}");
+    }
+}
@@ -0,0 +1,60 @@
+package io.viren.orders;
+
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.H2Dialect;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+class OrderRepositoryTest {
+
+    private final DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(
+            "r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+    private final OrderRepository orderRepository = new R2dbcRepositoryFactory(
+            new R2dbcEntityTemplate(databaseClient, H2Dialect.INSTANCE))
+            .getRepository(OrderRepository.class);
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Flux.fromArray(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .concatMap(statement -> databaseClient.sql(statement).then())
+                .then(databaseClient.sql("""
+                        insert into CustomerOrder (customer_id, product_name)
+                        values (1, 'a'), (2, 'b'), (1, 'c'), (2, 'd'), (1, 'e')""").then())
+                .then(databaseClient.sql("delete from CustomerOrder where id = 3").then())
+                .block();
+    }
+
+
+    @Test
+    void pagesThroughOrdersByTheLastIdSeen() {
+        StepVerifier.create(orderRepository.findPage(0, 2).map(Order::id))
+                .expectNext(1, 2)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findPage(2, 2).map(Order::id))
+                .as("skips the gap left by a deleted order")
+                .expectNext(4, 5)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findPage(5, 2))
+                .verifyComplete();
+    }
+
+
+    @Test
+    void readsOnlyTheLinesOfTheCustomer() {
+        StepVerifier.create(orderRepository.findLinesByCustomerId(1).map(OrderLine::productName).sort())
+                .expectNext("a", "e")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,119 @@
+package io.viren.orders;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+class TrackingBatcherTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(50);
+
+    private final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+
+
+    @Test
+    void coalescesTheLookupsOfOneWindowIntoOneCall() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids, Flux.fromIterable(ids)
+                .map(TrackingBatcherTest::tracking)), WINDOW, 100);
+
+        StepVerifier.create(Flux.merge(batcher.track(1, null), batcher.track(2, null), batcher.track(1, null))
+                        .map(Tracking::orderId).collectList())
+                .assertNext(ids -> assertThat(ids).containsExactlyInAnyOrder(1, 2, 1))
+                .verifyComplete();
+
+        assertThat(calls).containsExactly(List.of(1, 2));
+    }
+
+
+    @Test
+    void sendsAFullBatchWithoutWaitingForTheWindow() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids, Flux.fromIterable(ids)
+                .map(TrackingBatcherTest::tracking)), Duration.ofMinutes(1), 2);
+
+        StepVerifier.create(Flux.merge(batcher.track(1, null), batcher.track(2, null)).count())
+                .expectNext(2L)
+                .verifyComplete();
+
+        assertThat(calls).containsExactly(List.of(1, 2));
+    }
+
+
+    @Test
+    void completesEmptyForOrdersWithoutTracking() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids, Flux.just(tracking(1))), WINDOW, 100);
+
+        StepVerifier.create(Flux.merge(batcher.track(1, null), batcher.track(2, null)).map(Tracking::orderId))
+                .expectNext(1)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void looksTheOrdersUpOneByOneWhenTheBatchFails() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids, ids.contains(13)
+                ? Flux.error(new ResponseStatusException(INTERNAL_SERVER_ERROR))
+                : Flux.fromIterable(ids).map(TrackingBatcherTest::tracking)), WINDOW, 100);
+
+        final var lucky = batcher.track(1, null);
+        final var unlucky = batcher.track(13, null);
+        final var alsoLucky = batcher.track(2, null);
+
+        StepVerifier.create(Flux.merge(lucky.map(Tracking::orderId),
+                        unlucky.map(Tracking::orderId).onErrorReturn(-1), alsoLucky.map(Tracking::orderId))
+                        .collectList())
+                .assertNext(ids -> assertThat(ids).containsExactlyInAnyOrder(1, -1, 2))
+                .verifyComplete();
+
+        assertThat(calls).containsExactlyInAnyOrder(List.of(1, 13, 2), List.of(1), List.of(13), List.of(2));
+    }
+
+
+    @Test
+    void keepsWhatAFailedBatchReturnedBeforeFailing() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids, ids.size() > 1
+                ? Flux.just(tracking(1)).concatWith(Mono.error(new ResponseStatusException(INTERNAL_SERVER_ERROR)))
+                : Flux.fromIterable(ids).map(TrackingBatcherTest::tracking)), WINDOW, 100);
+
+        StepVerifier.create(Flux.merge(batcher.track(1, null), batcher.track(2, null)).count())
+                .expectNext(2L)
+                .verifyComplete();
+
+        assertThat(calls).containsExactly(List.of(1, 2), List.of(2));
+    }
+
+
+    @Test
+    void failsEveryWaiterWithoutRetryingWhenTrackingIsUnavailable() {
+        final var batcher = new TrackingBatcher((ids, behavior) -> record(ids,
+                Flux.error(new ResponseStatusException(SERVICE_UNAVAILABLE))), WINDOW, 100);
+
+        StepVerifier.create(Flux.merge(batcher.track(1, null).onErrorReturn(tracking(-1)),
+                        batcher.track(2, null).onErrorReturn(tracking(-1))).map(Tracking::orderId))
+                .expectNext(-1, -1)
+                .verifyComplete();
+
+        assertThat(calls).containsExactly(List.of(1, 2));
+    }
+
+
+    private Flux<Tracking> record(Collection<Integer> ids, Flux<Tracking> response) {
+        calls.add(List.copyOf(ids));
+        return response;
+    }
+
+
+    private static Tracking tracking(Integer orderId) {
+        return new Tracking(orderId, orderId * 10, "partner", "DELIVERED", null);
+    }
+}
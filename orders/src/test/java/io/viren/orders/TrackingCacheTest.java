@@ -0,0 +1,132 @@
+package io.viren.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingCacheTest {
+
+    private static final Duration SHORT = Duration.ofMillis(50);
+    private static final Duration LONG = Duration.ofHours(1);
+
+
+    @Test
+    void sharesOneLookupBetweenConcurrentMisses() {
+        final var cache = cache(LONG, LONG, LONG);
+        final var lookups = new AtomicInteger();
+        final Sinks.One<Tracking> lookup = Sinks.one();
+
+        final var first = cache.get(1, id -> Mono.defer(() -> {
+            lookups.incrementAndGet();
+            return lookup.asMono();
+        }));
+        final var second = cache.get(1, id -> Mono.error(new AssertionError("looked up twice")));
+        lookup.tryEmitValue(tracking(1, "DISPATCHED"));
+
+        StepVerifier.create(first.concatWith(second).map(Tracking::orderId))
+                .expectNext(1, 1)
+                .verifyComplete();
+        assertThat(lookups).hasValue(1);
+    }
+
+
+    @Test
+    void keepsDeliveredTrackingLongerThanTrackingStillMoving() throws InterruptedException {
+        final var cache = cache(LONG, SHORT, LONG);
+        cache.put(tracking(1, "DELIVERED"));
+        cache.put(tracking(2, "DISPATCHED"));
+
+        Thread.sleep(SHORT.multipliedBy(3).toMillis());
+
+        assertThat(cache.getIfPresent(1)).isNotNull();
+        assertThat(cache.getIfPresent(2)).isNull();
+    }
+
+
+    @Test
+    void expiresEvenWhileLiveAfterTheSafetyTtl() throws InterruptedException {
+        final var cache = cache(LONG, LONG, SHORT);
+        cache.live(true);
+        cache.put(tracking(1, "DELIVERED"));
+
+        assertThat(cache.getIfPresent(1)).isNotNull();
+        Thread.sleep(SHORT.multipliedBy(3).toMillis());
+        assertThat(cache.getIfPresent(1)).isNull();
+    }
+
+
+    @Test
+    void keepsWhatTheFeedPushedLongerThanTheTtl() throws InterruptedException {
+        final var cache = cache(SHORT, SHORT, LONG);
+        cache.live(true);
+        cache.put(tracking(1, "DISPATCHED"));
+
+        Thread.sleep(SHORT.multipliedBy(3).toMillis());
+
+        assertThat(cache.getIfPresent(1)).isNotNull();
+    }
+
+
+    @Test
+    void dropsEverythingWhenTheFeedStops() {
+        final var cache = cache(LONG, LONG, LONG);
+        cache.live(true);
+        cache.put(tracking(1, "DELIVERED"));
+
+        cache.live(false);
+
+        assertThat(cache.getIfPresent(1)).isNull();
+    }
+
+
+    @Test
+    void answersButDoesNotKeepALookupStartedBeforeTheFeedWentLive() {
+        final var cache = cache(LONG, LONG, LONG);
+        final Sinks.One<Tracking> lookup = Sinks.one();
+        final var pending = cache.get(1, id -> lookup.asMono());
+
+        StepVerifier.create(pending.map(Tracking::deliveryStatus))
+                .then(() -> {
+                    cache.live(true);
+                    lookup.tryEmitValue(tracking(1, "DISPATCHED"));
+                })
+                .expectNext("DISPATCHED")
+                .verifyComplete();
+        assertThat(cache.getIfPresent(1)).isNull();
+    }
+
+
+    @Test
+    void keepsWhatTheFeedPushedOverALookupStillInFlight() {
+        final var cache = cache(LONG, LONG, LONG);
+        final Sinks.One<Tracking> lookup = Sinks.one();
+        final var pending = cache.get(1, id -> lookup.asMono());
+
+        StepVerifier.create(pending.map(Tracking::deliveryStatus))
+                .then(() -> {
+                    cache.live(true);
+                    cache.put(tracking(1, "DELIVERED"));
+                    lookup.tryEmitValue(tracking(1, "DISPATCHED"));
+                })
+                .expectNext("DISPATCHED")
+                .verifyComplete();
+        assertThat(cache.getIfPresent(1).deliveryStatus()).isEqualTo("DELIVERED");
+    }
+
+
+    private static TrackingCache cache(Duration deliveredTtl, Duration defaultTtl, Duration liveTtl) {
+        return new TrackingCache(new SimpleMeterRegistry(), 100, deliveredTtl, defaultTtl, liveTtl);
+    }
+
+
+    private static Tracking tracking(Integer orderId, String status) {
+        return new Tracking(orderId, orderId * 10, "DHL", status, null);
+    }
+}
@@ -0,0 +1,108 @@
+package io.viren.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingEnrichmentTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<Integer, Sinks.One<Integer>> lookups = new ConcurrentHashMap<>();
+    private final AtomicInteger started = new AtomicInteger();
+    private final Function<Integer, Mono<Integer>> lookup = id -> Mono.defer(() -> {
+        started.incrementAndGet();
+        return lookups.computeIfAbsent(id, key -> Sinks.one()).asMono();
+    });
+
+
+    @Test
+    void keepsAtMostTheConcurrencyOfThePriorityInFlight() {
+        final var enrichment = enrichment(false);
+
+        StepVerifier.create(enrichment.enrich(Flux.range(1, 5), RequestPriority.LOW, lookup))
+                .then(() -> {
+                    assertThat(started).hasValue(2);
+                    assertThat(inFlight("low")).isEqualTo(2);
+                    complete(1);
+                })
+                .expectNext(1)
+                .then(() -> assertThat(started).hasValue(3))
+                .then(() -> List.of(2, 3, 4, 5).forEach(this::complete))
+                .expectNext(2, 3, 4, 5)
+                .verifyComplete();
+        assertThat(inFlight("low")).isZero();
+    }
+
+
+    @Test
+    void givesEachPriorityItsOwnConcurrency() {
+        final var enrichment = enrichment(false);
+
+        StepVerifier.create(enrichment.enrich(Flux.range(1, 5), RequestPriority.HIGH, lookup))
+                .then(() -> {
+                    assertThat(started).hasValue(4);
+                    assertThat(inFlight("high")).isEqualTo(4);
+                    assertThat(inFlight("low")).isZero();
+                })
+                .thenCancel()
+                .verify();
+    }
+
+
+    @Test
+    void emitsInCompletionOrderByDefault() {
+        final var enrichment = enrichment(false);
+
+        StepVerifier.create(enrichment.enrich(Flux.range(1, 2), RequestPriority.LOW, lookup))
+                .then(() -> complete(2))
+                .expectNext(2)
+                .then(() -> complete(1))
+                .expectNext(1)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void emitsInSourceOrderWhenOrdered() {
+        final var enrichment = enrichment(true);
+
+        StepVerifier.create(enrichment.enrich(Flux.range(1, 2), RequestPriority.LOW, lookup))
+                .then(() -> complete(2))
+                .then(() -> complete(1))
+                .expectNext(1, 2)
+                .verifyComplete();
+    }
+
+
+    @Test
+    void readsUnknownPrioritiesAsNormal() {
+        assertThat(RequestPriority.of("High")).isEqualTo(RequestPriority.HIGH);
+        assertThat(RequestPriority.of("urgent")).isEqualTo(RequestPriority.NORMAL);
+    }
+
+
+    private TrackingEnrichment enrichment(boolean ordered) {
+        return new TrackingEnrichment(meterRegistry, 4, 3, 2, 8, ordered);
+    }
+
+
+    private void complete(int id) {
+        lookups.computeIfAbsent(id, key -> Sinks.one()).tryEmitValue(id);
+    }
+
+
+    private double inFlight(String priority) {
+        return meterRegistry.get("orders.tracking.in-flight").tag("priority", priority).gauge().value();
+    }
+}
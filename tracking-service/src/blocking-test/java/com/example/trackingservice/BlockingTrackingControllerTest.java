@@ -0,0 +1,125 @@
+package com.example.trackingservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static com.example.trackingservice.DeliveryPartner.DHL;
+import static com.example.trackingservice.DeliveryStatus.DELIVERED;
+import static com.example.trackingservice.DeliveryStatus.DISPATCHED;
+import static com.example.trackingservice.DeliveryStatus.UNKNOWN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlockingTrackingControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final TrackingStore trackingStore = new TrackingStore(null, null, null, meterRegistry, 1_000, 10);
+    private final JdbcTrackingStore jdbcTrackingStore = new JdbcTrackingStore(jdbcTemplate,
+            new TransactionTemplate(new DataSourceTransactionManager(dataSource)), trackingStore,
+            new QueryMetrics(meterRegistry));
+    private final BlockingTrackingController controller = new BlockingTrackingController(jdbcTrackingStore::find,
+            jdbcTrackingStore::findAll, jdbcTrackingStore);
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Arrays.stream(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .forEach(jdbcTemplate::execute);
+        IntStream.rangeClosed(1, 3).forEach(orderId -> jdbcTemplate.update(
+                "insert into Tracking (order_id, partner, status) values (?, 'DHL', 'DELIVERED')", orderId));
+    }
+
+
+    @Test
+    void readsTheTrackingOfABatchWithOneQuery() {
+        assertThat(controller.trackAll(List.of(1, 2, 3, 2))).extracting(TrackingOut::orderId)
+                .containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(findAllQueries()).isEqualTo(1);
+
+        assertThat(controller.trackAll(List.of(1, 2, 3))).hasSize(3);
+        assertThat(findAllQueries()).as("answered from the index").isEqualTo(1);
+    }
+
+
+    @Test
+    void answersOrdersWithoutTrackingAsUnknown() {
+        assertThat(controller.trackAll(List.of(1, 42))).satisfiesExactly(
+                tracking -> {
+                    assertThat(tracking.orderId()).isEqualTo(1);
+                    assertThat(tracking.partner()).isEqualTo(DHL);
+                    assertThat(tracking.status()).isEqualTo(DELIVERED);
+                },
+                tracking -> {
+                    assertThat(tracking.orderId()).isEqualTo(42);
+                    assertThat(tracking.status()).isEqualTo(UNKNOWN);
+                    assertThat(tracking.trackingId()).isNull();
+                });
+    }
+
+
+    @Test
+    void splitsLargeBatchesIntoBoundedInLists() {
+        assertThat(controller.trackAll(IntStream.rangeClosed(1, TrackingStore.MAX_IN_LIST + 1).boxed().toList()))
+                .hasSize(TrackingStore.MAX_IN_LIST + 1);
+        assertThat(findAllQueries()).isEqualTo(2);
+    }
+
+
+    @Test
+    void turnsDownOrdersWithoutTracking() {
+        assertThatThrownBy(() -> controller.track(42)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("No tracking for order.");
+    }
+
+
+    @Test
+    void turnsDownUpdatesToUnknown() {
+        assertThatThrownBy(() -> controller.update(1, new TrackingUpdate(DHL, UNKNOWN, null)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Supply valid tracking.");
+    }
+
+
+    @Test
+    void recordsAnEventOnlyWhenTheStatusChangesAndPublishesEveryUpdate() {
+        final var changes = StepVerifier.create(trackingStore.changes().map(TrackingOut::status))
+                .expectNext(DISPATCHED, DISPATCHED, DELIVERED)
+                .thenCancel()
+                .verifyLater();
+
+        controller.update(7, new TrackingUpdate(DHL, DISPATCHED, null));
+        controller.update(7, new TrackingUpdate(DHL, DISPATCHED, null));
+        controller.update(7, new TrackingUpdate(DHL, DELIVERED, null));
+
+        changes.verify();
+        assertThat(controller.history(7)).extracting(TrackingEvent::status).containsExactly(DISPATCHED, DELIVERED);
+        assertThat(controller.track(7).status()).isEqualTo(DELIVERED);
+    }
+
+
+    private long findAllQueries() {
+        return meterRegistry.get("repository.queries").tag("query", "TrackingStore.findAll").timers().stream()
+                .mapToLong(timer -> timer.count())
+                .sum();
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.trackingservice;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.viren.commons.QueryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+
+import static com.example.trackingservice.DeliveryStatus.UNKNOWN;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+import static org.springframework.http.HttpStatusCode.valueOf;
+
+/**
+ * The {@code blocking} build: the endpoints of {@link TrackingController} on Spring MVC, one thread per request
+ * and JDBC instead of R2DBC, against the same database.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingConfiguration {
+
+    /**
+     * Spring Boot backs off its own data source and transaction manager as soon as there are R2DBC ones.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource dataSource(@Value("${spring.datasource.url}") String url,
+                                @Value("${spring.datasource.username:sa}") String username) {
+        return DataSourceBuilder.create().type(HikariDataSource.class).url(url).username(username).build();
+    }
+
+
+    @Bean
+    TransactionTemplate transactionTemplate(DataSource dataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "r2dbc", matchIfMissing = true)
+    Function<Integer, TrackingOut> blockingTracking(JdbcTrackingStore trackingStore) {
+        return trackingStore::find;
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "r2dbc", matchIfMissing = true)
+    Function<Collection<Integer>, List<TrackingOut>> blockingBatchTracking(JdbcTrackingStore trackingStore) {
+        return trackingStore::findAll;
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "synthetic")
+    Function<Integer, TrackingOut> blockingSyntheticTracking(Function<Integer, Mono<TrackingOut>> syntheticTracking) {
+        return orderId -> syntheticTracking.apply(orderId).block();
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "synthetic")
+    Function<Collection<Integer>, List<TrackingOut>> blockingSyntheticBatchTracking(
+            Function<Integer, TrackingOut> blockingSyntheticTracking) {
+        return orderIds -> orderIds.stream().map(blockingSyntheticTracking).toList();
+    }
+}
+
+
+@RestController
+@ConditionalOnWebApplication(type = SERVLET)
+class BlockingTrackingController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingTrackingController.class);
+
+    private final Function<Integer, TrackingOut> trackingFunc;
+    private final Function<Collection<Integer>, List<TrackingOut>> batchTrackingFunc;
+    private final JdbcTrackingStore trackingStore;
+
+
+    BlockingTrackingController(Function<Integer, TrackingOut> trackingFunc,
+                               Function<Collection<Integer>, List<TrackingOut>> batchTrackingFunc,
+                               JdbcTrackingStore trackingStore) {
+        this.trackingFunc = trackingFunc;
+        this.batchTrackingFunc = batchTrackingFunc;
+        this.trackingStore = trackingStore;
+    }
+
+
+    @GetMapping("/order-tracking/{order-id}")
+    TrackingOut track(@PathVariable("order-id") Integer orderId) {
+        final var tracking = trackingFunc.apply(orderId);
+        if (null == tracking) {
+            throw new ResponseStatusException(valueOf(404), "No tracking for order.");
+        }
+        return tracking;
+    }
+
+
+    /**
+     * See {@link TrackingController#trackAll(Flux)}.
+     */
+    @PostMapping("/order-tracking/batch")
+    List<TrackingOut> trackAll(@RequestBody List<Integer> orderIds) {
+        try {
+            final var unanswered = new LinkedHashSet<>(orderIds);
+            final var trackings = batchTrackingFunc.apply(List.copyOf(unanswered));
+            trackings.forEach(tracking -> unanswered.remove(tracking.orderId()));
+            return Stream.concat(trackings.stream(), unanswered.stream().map(TrackingOut::unknown)).toList();
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            throw e;
+        }
+    }
+
+
+    @PutMapping("/order-tracking/{order-id}")
+    TrackingOut update(@PathVariable("order-id") Integer orderId, @RequestBody TrackingUpdate update) {
+        if (null == update.partner() || null == update.status() || UNKNOWN == update.status()) {
+            throw new ResponseStatusException(valueOf(400), "Supply valid tracking.");
+        }
+        return trackingStore.update(orderId, update);
+    }
+
+
+    @GetMapping("/order-tracking/{order-id}/history")
+    List<TrackingEvent> history(@PathVariable("order-id") Integer orderId) {
+        return trackingStore.history(orderId);
+    }
+}
+
+
+/**
+ * JDBC twin of {@link TrackingStore}, sharing its index and change feed.
+ */
+@Component
+@ConditionalOnWebApplication(type = SERVLET)
+class JdbcTrackingStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TrackingStore trackingStore;
+    private final QueryMetrics queryMetrics;
+
+
+    JdbcTrackingStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, TrackingStore trackingStore,
+                      QueryMetrics queryMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.trackingStore = trackingStore;
+        this.queryMetrics = queryMetrics;
+    }
+
+
+    TrackingOut find(int orderId) {
+        final var indexed = trackingStore.indexed(orderId);
+        if (null != indexed) {
+            return indexed;
+        }
+        final var tracking = queryMetrics.time("TrackingStore.find", () -> select(orderId));
+        if (null != tracking) {
+            trackingStore.loaded(orderId, tracking);
+        }
+        return tracking;
+    }
+
+
+    /**
+     * See {@link TrackingStore#findAll(Collection)}.
+     */
+    List<TrackingOut> findAll(Collection<Integer> orderIds) {
+        final List<TrackingOut> trackings = new ArrayList<>();
+        final List<Integer> missing = new ArrayList<>();
+        for (Integer orderId : orderIds) {
+            final var tracking = trackingStore.indexed(orderId);
+            if (null == tracking) {
+                missing.add(orderId);
+            } else {
+                trackings.add(tracking);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += TrackingStore.MAX_IN_LIST) {
+            final var chunk = missing.subList(from, Math.min(missing.size(), from + TrackingStore.MAX_IN_LIST));
+            final var loaded = queryMetrics.time("TrackingStore.findAll", () -> namedParameterJdbcTemplate.query(
+                    "select * from Tracking where order_id in (:orderIds)", Map.of("orderIds", chunk),
+                    (row, rowNum) -> tracking(row)));
+            loaded.forEach(tracking -> trackingStore.loaded(tracking.orderId(), tracking));
+            trackings.addAll(loaded);
+        }
+        return trackings;
+    }
+
+
+    TrackingOut update(int orderId, TrackingUpdate update) {
+        final var tracking = queryMetrics.time("TrackingStore.update", () -> transactionTemplate.execute(status -> {
+            final var current = select(orderId);
+            jdbcTemplate.update("""
+                            merge into Tracking (order_id, partner, status, tentative_delivery_date) key (order_id)
+                            values (?, ?, ?, ?)""", orderId, update.partner().name(), update.status().name(),
+                    null == update.tentativeDeliveryDate() ? null : Date.valueOf(update.tentativeDeliveryDate()));
+            if (null == current || current.status() != update.status()) {
+                jdbcTemplate.update("insert into TrackingEvent (order_id, status, occurred_at) values (?, ?, ?)",
+                        orderId, update.status().name(), Timestamp.valueOf(LocalDateTime.now()));
+            }
+            return select(orderId);
+        }));
+        trackingStore.stored(orderId, tracking);
+        return tracking;
+    }
+
+
+    List<TrackingEvent> history(int orderId) {
+        return queryMetrics.time("TrackingStore.history", () -> jdbcTemplate.query(
+                "select status, occurred_at from TrackingEvent where order_id = ? order by id",
+                (row, rowNum) -> new TrackingEvent(DeliveryStatus.valueOf(row.getString("status")),
+                        row.getObject("occurred_at", LocalDateTime.class)), orderId));
+    }
+
+
+    private TrackingOut select(int orderId) {
+        return jdbcTemplate.query("select * from Tracking where order_id = ?", (row, rowNum) -> tracking(row), orderId)
+                .stream()
+                .findFirst()
+                .orElse(null);
+    }
+
+
+    private static TrackingOut tracking(ResultSet row) throws SQLException {
+        return new TrackingOut(row.getInt("order_id"), row.getInt("tracking_id"),
+                DeliveryPartner.valueOf(row.getString("partner")),
+                DeliveryStatus.valueOf(row.getString("status")),
+                row.getObject("tentative_delivery_date", LocalDate.class));
+    }
+}
\ No newline at end of file
@@ -1,30 +1,67 @@
 package com.example.trackingservice;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import io.viren.commons.QueryMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.example.trackingservice.DeliveryPartner.DHL;
 import static com.example.trackingservice.DeliveryPartner.FEDEX;
 import static com.example.trackingservice.DeliveryStatus.DELIVERED;
+import static com.example.trackingservice.DeliveryStatus.DISPATCHED;
+import static com.example.trackingservice.DeliveryStatus.UNKNOWN;
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
 import static org.springframework.http.HttpStatusCode.valueOf;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
+/**
+ * Types that Jackson or the {@link Binder} reflect on outside of controller signatures, registered for AOT
+ * processing and native images.
+ */
 @SpringBootApplication
+@RegisterReflectionForBinding({TrackingOut.class, TrackingUpdate.class, TrackingEvent.class})
 public class TrackingServiceApplication {
 
     public static void main(String[] args) {
@@ -32,72 +69,488 @@ public class TrackingServiceApplication {
     }
 
 
-    private final Random random = new Random();
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "r2dbc", matchIfMissing = true)
+    Function<Integer, Mono<TrackingOut>> tracking(TrackingStore trackingStore) {
+        return trackingStore::find;
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "r2dbc", matchIfMissing = true)
+    Function<Collection<Integer>, Flux<TrackingOut>> batchTracking(TrackingStore trackingStore) {
+        return trackingStore::findAll;
+    }
 
 
+    /**
+     * Made up tracking for every order, without touching the store. Meant for benchmarks and load tests.
+     */
     @Bean
-    Function<Integer, Mono<TrackingOut>> tracking() {
-        final var values = List.of(DeliveryStatus.values());
-        return orderId -> Mono.just(new TrackingOut(orderId, FEDEX, values.get(random.nextInt(values.size()))));
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "synthetic")
+    Function<Integer, Mono<TrackingOut>> syntheticTracking() {
+        final var values = new DeliveryStatus[]{DISPATCHED, DELIVERED};
+        return orderId -> Mono.just(new TrackingOut(orderId, FEDEX,
+                values[ThreadLocalRandom.current().nextInt(values.length)]));
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "synthetic")
+    Function<Collection<Integer>, Flux<TrackingOut>> syntheticBatchTracking(
+            Function<Integer, Mono<TrackingOut>> syntheticTracking) {
+        return orderIds -> Flux.fromIterable(orderIds).concatMap(syntheticTracking);
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "tracking.store", havingValue = "r2dbc", matchIfMissing = true)
+    ApplicationRunner sampleDataInitializer(TrackingStore trackingStore) {
+        return args -> Flux.range(1, 8)
+                .concatMap(orderId -> trackingStore.update(orderId, orderId % 2 == 0
+                        ? new TrackingUpdate(DHL, DELIVERED, null)
+                        : new TrackingUpdate(FEDEX, DISPATCHED, LocalDate.now().plusDays(2))))
+                .subscribe();
     }
 
 }
 
 
 @RestController
+@ConditionalOnWebApplication(type = REACTIVE)
 class TrackingController {
 
     private static final Logger LOG = LoggerFactory.getLogger(TrackingController.class);
 
     private final Function<Integer, Mono<TrackingOut>> trackingFunc;
+    private final Function<Collection<Integer>, Flux<TrackingOut>> batchTrackingFunc;
+    private final TrackingStore trackingStore;
 
 
-    TrackingController(Function<Integer, Mono<TrackingOut>> trackingFunc) {
+    TrackingController(Function<Integer, Mono<TrackingOut>> trackingFunc,
+                       Function<Collection<Integer>, Flux<TrackingOut>> batchTrackingFunc,
+                       TrackingStore trackingStore) {
         this.trackingFunc = trackingFunc;
+        this.batchTrackingFunc = batchTrackingFunc;
+        this.trackingStore = trackingStore;
     }
 
 
     @GetMapping("/order-tracking/{order-id}")
-    Mono<TrackingOut> track(@PathVariable("order-id") Integer orderId,
-                            @RequestParam(value = "emulateFailure", defaultValue = "no") String signal
-            , @RequestParam(value = "httpFailureCode", defaultValue = "500") String failureCode,
-                            @RequestParam(value = "emulateDelay", defaultValue = "no") String delaySignal,
-                            @RequestParam(value = "delayInMs", defaultValue = "0") String delayInMs) {
-
-        final var trackingOutMono = Mono.just(delaySignal)
-                .filter(ds -> ds.equalsIgnoreCase("YES"))
-                .flatMap(i -> Mono.delay(Duration.ofMillis(Integer.parseInt(delayInMs)))
-                        .then(trackingFunc.apply(orderId)))
-                .switchIfEmpty(Mono.defer(() -> trackingFunc.apply(orderId)));
-
-        return Mono.just(signal)
-                .filter(failureSignal -> failureSignal.equalsIgnoreCase("YES"))
-                .flatMap(s -> Mono.error(new ResponseStatusException(valueOf(Integer.parseInt(failureCode)),
-                        "failed on purpose at tracking app.")))
-                .defaultIfEmpty("neglected")
-                .flatMap(s -> Mono.defer(() -> trackingOutMono))
+    Mono<TrackingOut> track(@PathVariable("order-id") Integer orderId) {
+        return trackingFunc.apply(orderId)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(valueOf(404), "No tracking for order.")))
+                .doOnError(error -> LOG.error(error.getMessage(), error));
+    }
+
+
+    /**
+     * Orders without tracking are answered with status {@code UNKNOWN} rather than left out, so they are not taken
+     * for a lost answer.
+     */
+    @PostMapping("/order-tracking/batch")
+    Flux<TrackingOut> trackAll(@RequestBody Flux<Integer> orderIds) {
+        return orderIds.collect(Collectors.toCollection(LinkedHashSet::new))
+                .flatMapMany(unanswered -> batchTrackingFunc.apply(List.copyOf(unanswered))
+                        .doOnNext(tracking -> unanswered.remove(tracking.orderId()))
+                        .concatWith(Flux.defer(() -> Flux.fromIterable(unanswered).map(TrackingOut::unknown))))
                 .doOnError(error -> LOG.error(error.getMessage(), error));
     }
+
+
+    @PutMapping("/order-tracking/{order-id}")
+    Mono<TrackingOut> update(@PathVariable("order-id") Integer orderId, @RequestBody TrackingUpdate update) {
+        if (null == update.partner() || null == update.status() || UNKNOWN == update.status()) {
+            return Mono.error(new ResponseStatusException(valueOf(400), "Supply valid tracking."));
+        }
+        return trackingStore.update(orderId, update);
+    }
+
+
+    @GetMapping("/order-tracking/{order-id}/history")
+    Flux<TrackingEvent> history(@PathVariable("order-id") Integer orderId) {
+        return trackingStore.history(orderId);
+    }
+}
+
+
+/**
+ * Served on either web stack, Spring MVC streaming the {@link Flux} as well.
+ */
+@RestController
+class TrackingChangesController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrackingChangesController.class);
+    private static final Duration HEARTBEAT = Duration.ofSeconds(5);
+
+    private final TrackingStore trackingStore;
+
+
+    TrackingChangesController(TrackingStore trackingStore) {
+        this.trackingStore = trackingStore;
+    }
+
+
+    /**
+     * Every tracking change as it is stored. A heartbeat comment goes out every {@link #HEARTBEAT} so subscribers
+     * can tell an idle stream from a dead one. A subscriber that fell too far behind has the stream ended, and
+     * reconnects knowing it missed changes.
+     */
+    @GetMapping(value = "/order-tracking/changes", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<TrackingOut>> changes() {
+        return Flux.merge(trackingStore.changes()
+                        .map(tracking -> ServerSentEvent.builder(tracking).event("tracking").build()),
+                Flux.interval(Duration.ZERO, HEARTBEAT)
+                        .map(tick -> ServerSentEvent.<TrackingOut>builder().comment("heartbeat").build()))
+                .onErrorResume(Exceptions::isOverflow, error -> {
+                    LOG.warn("Ending the tracking changes of a subscriber that fell behind");
+                    return Flux.empty();
+                });
+    }
 }
 
 
 @JsonInclude(NON_NULL)
 record TrackingOut(Integer orderId, Integer trackingId, DeliveryPartner partner, DeliveryStatus status,
                    LocalDate tentativeDeliveryDate) {
-    static Random random = new Random();
-    static final List<Integer> TRACKING_IDS = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
-
 
     TrackingOut(Integer orderId, DeliveryPartner deliveryPartner, DeliveryStatus status) {
-        this(orderId, TRACKING_IDS.get(random.nextInt(TRACKING_IDS.size())), deliveryPartner, status,
+        this(orderId, ThreadLocalRandom.current().nextInt(1, 11), deliveryPartner, status,
                 DELIVERED == status
                         ? null :
                         LocalDate.now());
     }
+
+
+    static TrackingOut unknown(int orderId) {
+        return new TrackingOut(orderId, null, null, UNKNOWN, null);
+    }
+}
+
+
+record TrackingUpdate(DeliveryPartner partner, DeliveryStatus status, LocalDate tentativeDeliveryDate) {
+}
+
+
+record TrackingEvent(DeliveryStatus status, LocalDateTime occurredAt) {
+}
+
+
+/**
+ * Tracking kept in the {@code Tracking} table, every status change being appended to {@code TrackingEvent}. Reads
+ * are served from a {@link TrackingIndex} once an order was looked up or updated.
+ */
+@Component
+class TrackingStore {
+
+    /**
+     * Order ids bound into one {@code in} list, keeping statements few and their plans cacheable.
+     */
+    static final int MAX_IN_LIST = 500;
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final QueryMetrics queryMetrics;
+    private final TrackingIndex index;
+    private final Sinks.Many<TrackingOut> changes = Sinks.many().multicast().directBestEffort();
+    private final int changesBufferSize;
+    private final Counter changesOverflows;
+
+
+    TrackingStore(DatabaseClient databaseClient, TransactionalOperator transactionalOperator,
+                  QueryMetrics queryMetrics, MeterRegistry meterRegistry,
+                  @Value("${tracking.index.max-size:100000}") int indexMaxSize,
+                  @Value("${tracking.changes.buffer-size:1000}") int changesBufferSize) {
+        this.databaseClient = databaseClient;
+        index = new TrackingIndex(indexMaxSize);
+        this.transactionalOperator = transactionalOperator;
+        this.queryMetrics = queryMetrics;
+        this.changesBufferSize = changesBufferSize;
+        changesOverflows = meterRegistry.counter("tracking.changes.overflows");
+        Gauge.builder("tracking.index.size", index, TrackingIndex::size).register(meterRegistry);
+    }
+
+
+    Mono<TrackingOut> find(int orderId) {
+        final var indexed = indexed(orderId);
+        if (null != indexed) {
+            return Mono.just(indexed);
+        }
+        return queryMetrics.time("TrackingStore.find", select(orderId))
+                .doOnNext(tracking -> loaded(orderId, tracking));
+    }
+
+
+    /**
+     * Tracking of the orders that have some, those not indexed read with one query per {@link #MAX_IN_LIST} orders
+     * rather than one per order.
+     */
+    Flux<TrackingOut> findAll(Collection<Integer> orderIds) {
+        return Flux.defer(() -> {
+            final List<TrackingOut> indexed = new ArrayList<>();
+            final List<Integer> missing = new ArrayList<>();
+            for (Integer orderId : orderIds) {
+                final var tracking = indexed(orderId);
+                if (null == tracking) {
+                    missing.add(orderId);
+                } else {
+                    indexed.add(tracking);
+                }
+            }
+            return Flux.fromIterable(indexed)
+                    .concatWith(Flux.fromIterable(missing)
+                            .buffer(MAX_IN_LIST)
+                            .concatMap(chunk -> queryMetrics.time("TrackingStore.findAll", databaseClient
+                                    .sql("select * from Tracking where order_id in (:orderIds)")
+                                    .bind("orderIds", chunk)
+                                    .map(TrackingStore::tracking)
+                                    .all()))
+                            .doOnNext(tracking -> loaded(tracking.orderId(), tracking)));
+        });
+    }
+
+
+    /**
+     * Creates or updates the tracking of an order, recording a status transition when the status changed.
+     */
+    Mono<TrackingOut> update(int orderId, TrackingUpdate update) {
+        final var merge = databaseClient.sql("""
+                        merge into Tracking (order_id, partner, status, tentative_delivery_date) key (order_id)
+                        values (:orderId, :partner, :status, :date)""")
+                .bind("orderId", orderId)
+                .bind("partner", update.partner().name())
+                .bind("status", update.status().name());
+        final var event = databaseClient.sql("""
+                        insert into TrackingEvent (order_id, status, occurred_at)
+                        values (:orderId, :status, :occurredAt)""")
+                .bind("orderId", orderId)
+                .bind("status", update.status().name())
+                .bind("occurredAt", LocalDateTime.now());
+        final var updated = select(orderId)
+                .map(tracking -> tracking.status() != update.status())
+                .defaultIfEmpty(true)
+                .flatMap(transition -> (null == update.tentativeDeliveryDate()
+                        ? merge.bindNull("date", LocalDate.class)
+                        : merge.bind("date", update.tentativeDeliveryDate()))
+                        .then()
+                        .then(transition ? event.then() : Mono.empty())
+                        .then(select(orderId)));
+        return queryMetrics.time("TrackingStore.update", transactionalOperator.transactional(updated))
+                .doOnNext(tracking -> stored(orderId, tracking));
+    }
+
+
+    TrackingOut indexed(int orderId) {
+        return index.get(orderId);
+    }
+
+
+    /**
+     * For tracking read from the {@code Tracking} table by whatever means.
+     */
+    void loaded(int orderId, TrackingOut tracking) {
+        index.putIfAbsent(orderId, tracking);
+    }
+
+
+    /**
+     * For tracking written to the {@code Tracking} table by whatever means, once committed.
+     */
+    void stored(int orderId, TrackingOut tracking) {
+        index.put(orderId, tracking);
+        changes.emitNext(tracking, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+
+    /**
+     * Trackings as they are updated, to subscribers connected at that time. Each subscriber gets its own buffer of
+     * {@code tracking.changes.buffer-size} changes so a slow one does not hold back the others; one that falls
+     * further behind is cut off with an overflow error rather than silently missing changes, so it knows to drop
+     * whatever it derived from them.
+     */
+    Flux<TrackingOut> changes() {
+        return changes.asFlux()
+                .onBackpressureBuffer(changesBufferSize, dropped -> changesOverflows.increment(),
+                        BufferOverflowStrategy.ERROR);
+    }
+
+
+    Flux<TrackingEvent> history(int orderId) {
+        return queryMetrics.time("TrackingStore.history", databaseClient.sql("""
+                        select status, occurred_at from TrackingEvent where order_id = :orderId order by id""")
+                .bind("orderId", orderId)
+                .map(row -> new TrackingEvent(DeliveryStatus.valueOf(row.get("status", String.class)),
+                        row.get("occurred_at", LocalDateTime.class)))
+                .all());
+    }
+
+
+    private Mono<TrackingOut> select(int orderId) {
+        return databaseClient.sql("select * from Tracking where order_id = :orderId")
+                .bind("orderId", orderId)
+                .map(TrackingStore::tracking)
+                .one();
+    }
+
+
+    private static TrackingOut tracking(Readable row) {
+        return new TrackingOut(row.get("order_id", Integer.class), row.get("tracking_id", Integer.class),
+                DeliveryPartner.valueOf(row.get("partner", String.class)),
+                DeliveryStatus.valueOf(row.get("status", String.class)),
+                row.get("tentative_delivery_date", LocalDate.class));
+    }
+}
+
+
+/**
+ * Open addressing map from order id to {@link TrackingOut}: keys stay primitive ints, there are no entry objects,
+ * and lookups are optimistic reads that only take the lock while a write is in progress.
+ * <p>
+ * Bounded to {@code maxSize} entries by keeping two generations of half that size: once the current one is full it
+ * becomes the previous one, dropping the one before. An entry read from the previous generation moves back to the
+ * current one, so only orders neither read nor written for a whole generation are evicted.
+ */
+class TrackingIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    private final int generationSize;
+    private Table current = Table.ofCapacity(INITIAL_CAPACITY);
+    private Table previous = Table.ofCapacity(INITIAL_CAPACITY);
+    private int currentSize;
+    private int previousSize;
+
+
+    TrackingIndex(int maxSize) {
+        generationSize = Math.max(1, maxSize / 2);
+    }
+
+
+    record Table(int[] keys, TrackingOut[] values) {
+
+        static Table ofCapacity(int capacity) {
+            return new Table(new int[capacity], new TrackingOut[capacity]);
+        }
+
+
+        /**
+         * Fibonacci hashing: the top bits of the product mix in every bit of the key, where the low ones would
+         * only depend on the low bits of the key.
+         */
+        int slot(int key) {
+            final var mask = keys.length - 1;
+            var slot = (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+            while (null != values[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+
+        TrackingOut get(int key) {
+            return values[slot(key)];
+        }
+    }
+
+
+    TrackingOut get(int key) {
+        final var stamp = lock.tryOptimisticRead();
+        var value = current.get(key);
+        var promote = false;
+        if (null == value) {
+            value = previous.get(key);
+            promote = null != value;
+        }
+        if (!lock.validate(stamp)) {
+            final var readStamp = lock.readLock();
+            try {
+                value = current.get(key);
+                promote = false;
+                if (null == value) {
+                    value = previous.get(key);
+                    promote = null != value;
+                }
+            } finally {
+                lock.unlockRead(readStamp);
+            }
+        }
+        if (promote) {
+            put(key, value, false);
+        }
+        return value;
+    }
+
+
+    void put(int key, TrackingOut value) {
+        put(key, value, true);
+    }
+
+
+    /**
+     * For values read from the store, which must not override a concurrent {@link #put(int, TrackingOut)}.
+     */
+    void putIfAbsent(int key, TrackingOut value) {
+        put(key, value, false);
+    }
+
+
+    /**
+     * Entries held over both generations, an entry moved back to the current one counting twice until the previous
+     * one is dropped.
+     */
+    int size() {
+        return currentSize + previousSize;
+    }
+
+
+    private void put(int key, TrackingOut value, boolean override) {
+        final var stamp = lock.writeLock();
+        try {
+            var slot = current.slot(key);
+            if (null != current.values()[slot]) {
+                if (override) {
+                    current.values()[slot] = value;
+                }
+                return;
+            }
+            if (currentSize >= generationSize) {
+                previous = current;
+                previousSize = currentSize;
+                current = Table.ofCapacity(INITIAL_CAPACITY);
+                currentSize = 0;
+            } else if (2 * (currentSize + 1) > current.keys().length) {
+                resize();
+            }
+            slot = current.slot(key);
+            current.keys()[slot] = key;
+            current.values()[slot] = value;
+            currentSize++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    private void resize() {
+        final var old = current;
+        final var resized = Table.ofCapacity(old.keys().length * 2);
+        for (int i = 0; i < old.keys().length; i++) {
+            if (null != old.values()[i]) {
+                final var slot = resized.slot(old.keys()[i]);
+                resized.keys()[slot] = old.keys()[i];
+                resized.values()[slot] = old.values()[i];
+            }
+        }
+        current = resized;
+    }
 }
 
 
 enum DeliveryPartner {FEDEX, DHL}
 
 
-enum DeliveryStatus {DISPATCHED, DELIVERED}
+/**
+ * {@code UNKNOWN} only answers orders without tracking, it is never stored.
+ */
+enum DeliveryStatus {DISPATCHED, DELIVERED, UNKNOWN}
\ No newline at end of file
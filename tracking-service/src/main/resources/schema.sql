@@ -0,0 +1,16 @@
+create table Tracking
+(
+    tracking_id             serial primary key,
+    order_id                int         not null unique,
+    partner                 varchar(16) not null,
+    status                  varchar(16) not null,
+    tentative_delivery_date date
+);
+create table TrackingEvent
+(
+    id          serial primary key,
+    order_id    int         not null,
+    status      varchar(16) not null,
+    occurred_at timestamp   not null
+);
+create index if not exists tracking_event_order_id on TrackingEvent (order_id);
@@ -0,0 +1,109 @@
+package com.example.trackingservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.viren.commons.QueryMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static com.example.trackingservice.DeliveryPartner.DHL;
+import static com.example.trackingservice.DeliveryStatus.DELIVERED;
+import static com.example.trackingservice.DeliveryStatus.UNKNOWN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DatabaseClient databaseClient;
+    private final TrackingStore trackingStore;
+    private final TrackingController controller;
+
+
+    TrackingControllerTest() {
+        final var connectionFactory = ConnectionFactories.get(
+                "r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1");
+        databaseClient = DatabaseClient.create(connectionFactory);
+        trackingStore = new TrackingStore(databaseClient,
+                TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory)),
+                new QueryMetrics(meterRegistry), meterRegistry, 1_000, 10);
+        controller = new TrackingController(trackingStore::find, trackingStore::findAll, trackingStore);
+    }
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Flux.fromArray(new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8).split(";"))
+                .filter(statement -> !statement.isBlank())
+                .concatMap(statement -> databaseClient.sql(statement).then())
+                .thenMany(Flux.range(1, 3).concatMap(orderId -> databaseClient.sql("""
+                                insert into Tracking (order_id, partner, status) values (:orderId, 'DHL', 'DELIVERED')""")
+                        .bind("orderId", orderId)
+                        .then()))
+                .blockLast();
+    }
+
+
+    @Test
+    void readsTheTrackingOfABatchWithOneQuery() {
+        StepVerifier.create(controller.trackAll(Flux.just(1, 2, 3, 2)).map(TrackingOut::orderId).collectList())
+                .assertNext(orderIds -> assertThat(orderIds).containsExactlyInAnyOrder(1, 2, 3))
+                .verifyComplete();
+        assertThat(findAllQueries()).isEqualTo(1);
+
+        StepVerifier.create(controller.trackAll(Flux.just(1, 2, 3)))
+                .expectNextCount(3)
+                .verifyComplete();
+        assertThat(findAllQueries()).as("answered from the index").isEqualTo(1);
+    }
+
+
+    @Test
+    void answersOrdersWithoutTrackingAsUnknown() {
+        StepVerifier.create(controller.trackAll(Flux.just(1, 42)))
+                .assertNext(tracking -> {
+                    assertThat(tracking.orderId()).isEqualTo(1);
+                    assertThat(tracking.partner()).isEqualTo(DHL);
+                    assertThat(tracking.status()).isEqualTo(DELIVERED);
+                })
+                .assertNext(tracking -> {
+                    assertThat(tracking.orderId()).isEqualTo(42);
+                    assertThat(tracking.status()).isEqualTo(UNKNOWN);
+                    assertThat(tracking.trackingId()).isNull();
+                })
+                .verifyComplete();
+    }
+
+
+    @Test
+    void splitsLargeBatchesIntoBoundedInLists() {
+        StepVerifier.create(controller.trackAll(Flux.range(1, TrackingStore.MAX_IN_LIST + 1)))
+                .expectNextCount(TrackingStore.MAX_IN_LIST + 1)
+                .verifyComplete();
+        assertThat(findAllQueries()).isEqualTo(2);
+    }
+
+
+    @Test
+    void turnsDownUpdatesToUnknown() {
+        StepVerifier.create(controller.update(1, new TrackingUpdate(DHL, UNKNOWN, null)))
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageContaining("Supply valid tracking."))
+                .verify();
+    }
+
+
+    private long findAllQueries() {
+        return meterRegistry.get("repository.queries").tag("query", "TrackingStore.findAll").timers().stream()
+                .mapToLong(timer -> timer.count())
+                .sum();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.trackingservice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static com.example.trackingservice.DeliveryPartner.DHL;
+import static com.example.trackingservice.DeliveryPartner.FEDEX;
+import static com.example.trackingservice.DeliveryStatus.DELIVERED;
+import static com.example.trackingservice.DeliveryStatus.DISPATCHED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingIndexTest {
+
+    private final TrackingIndex index = new TrackingIndex(1_000_000);
+
+
+    @Test
+    void findsWhatWasPutAcrossResizes() {
+        for (var orderId = 1; orderId <= 10_000; orderId++) {
+            index.put(orderId, new TrackingOut(orderId, FEDEX, DISPATCHED));
+        }
+
+        assertThat(index.size()).isEqualTo(10_000);
+        for (var orderId = 1; orderId <= 10_000; orderId++) {
+            assertThat(index.get(orderId).orderId()).isEqualTo(orderId);
+        }
+        assertThat(index.get(0)).isNull();
+        assertThat(index.get(10_001)).isNull();
+        assertThat(index.get(-1)).isNull();
+    }
+
+
+    @Test
+    void overridesOnPutButNotOnPutIfAbsent() {
+        index.put(7, new TrackingOut(7, FEDEX, DISPATCHED));
+
+        index.putIfAbsent(7, new TrackingOut(7, DHL, DISPATCHED));
+        assertThat(index.get(7).partner()).isEqualTo(FEDEX);
+
+        index.put(7, new TrackingOut(7, FEDEX, DELIVERED));
+        assertThat(index.get(7).status()).isEqualTo(DELIVERED);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+
+    /**
+     * Ids sharing their low bits, as ids handed out in blocks per shard do, all started probing from the same slot
+     * when the hash kept the low bits of the product.
+     */
+    @Test
+    void spreadsKeysThatShareTheirLowBits() {
+        final var table = new TrackingIndex.Table(new int[1024], new TrackingOut[1024]);
+
+        final var slots = IntStream.rangeClosed(1, 1024).map(i -> table.slot(i << 16)).distinct().count();
+
+        assertThat(slots).as("about 1 - 1/e of the slots for random ones").isGreaterThan(550);
+    }
+
+
+    @Test
+    void evictsWhatWasNeitherReadNorWrittenForAGeneration() {
+        final var bounded = new TrackingIndex(200);
+        putAll(bounded, 1, 150);
+        assertThat(bounded.get(1)).as("read back from the previous generation").isNotNull();
+
+        putAll(bounded, 151, 250);
+
+        assertThat(bounded.get(1)).isNotNull();
+        assertThat(bounded.get(2)).isNull();
+        assertThat(bounded.get(101)).isNotNull();
+        assertThat(bounded.get(250)).isNotNull();
+        assertThat(bounded.size()).isLessThanOrEqualTo(200);
+    }
+
+
+    private static void putAll(TrackingIndex index, int from, int to) {
+        for (var orderId = from; orderId <= to; orderId++) {
+            index.put(orderId, new TrackingOut(orderId, FEDEX, DISPATCHED));
+        }
+    }
+}
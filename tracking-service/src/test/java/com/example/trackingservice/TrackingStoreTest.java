@@ -0,0 +1,66 @@
+package com.example.trackingservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.test.StepVerifier;
+
+import static com.example.trackingservice.DeliveryPartner.DHL;
+import static com.example.trackingservice.DeliveryStatus.DISPATCHED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TrackingStore store = new TrackingStore(null, null, null, meterRegistry, 1_000, 2);
+
+
+    @Test
+    void streamsChangesToEverySubscriber() {
+        final var first = StepVerifier.create(store.changes().map(TrackingOut::orderId)).expectNext(1, 2)
+                .thenCancel().verifyLater();
+        final var second = StepVerifier.create(store.changes().map(TrackingOut::orderId)).expectNext(1, 2)
+                .thenCancel().verifyLater();
+
+        store.stored(1, tracking(1));
+        store.stored(2, tracking(2));
+
+        first.verify();
+        second.verify();
+        assertThat(store.indexed(2)).isNotNull();
+    }
+
+
+    @Test
+    void buffersForASlowSubscriber() {
+        StepVerifier.create(store.changes().map(TrackingOut::orderId), 0)
+                .then(() -> {
+                    store.stored(1, tracking(1));
+                    store.stored(2, tracking(2));
+                })
+                .thenRequest(2)
+                .expectNext(1, 2)
+                .thenCancel()
+                .verify();
+    }
+
+
+    @Test
+    void cutsOffASubscriberThatFellTooFarBehind() {
+        StepVerifier.create(store.changes(), 0)
+                .then(() -> {
+                    store.stored(1, tracking(1));
+                    store.stored(2, tracking(2));
+                    store.stored(3, tracking(3));
+                })
+                .thenRequest(3)
+                .expectNextCount(2)
+                .verifyErrorMatches(Exceptions::isOverflow);
+        assertThat(meterRegistry.counter("tracking.changes.overflows").count()).isEqualTo(1);
+    }
+
+
+    private static TrackingOut tracking(int orderId) {
+        return new TrackingOut(orderId, DHL, DISPATCHED);
+    }
+}